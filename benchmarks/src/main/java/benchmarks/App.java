@@ -0,0 +1,118 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Handles on the application's entry points. The application lives in the default package, which code in a named
+ * package can't import (and JMH won't generate benchmarks in the default package), so the methods are looked up once
+ * by name. Constant method handles are inlined by the JIT like direct calls.
+ */
+final class App {
+
+    static final Class<?> TRANSCRIPT_EDITOR = type("TranscriptEditor");
+    static final Class<?> PASSAGE_GENERATOR = type("PassageGenerator");
+    static final Class<?> N_GRAM_MODEL = type("NGramModel");
+    static final Class<?> INT_LIST = type("IntList");
+    static final Class<?> GENERATOR = type("Generator");
+    static final Class<?> TOKEN_SPANS = type("TokenSpans");
+
+    /** Object[] TranscriptEditor.tokenizeString(String) */
+    static final MethodHandle TOKENIZE_STRING = method(TRANSCRIPT_EDITOR, "tokenizeString", Object[].class,
+            String.class);
+    /** String TranscriptEditor.removeTimes(String) */
+    static final MethodHandle REMOVE_TIMES = method(TRANSCRIPT_EDITOR, "removeTimes", String.class, String.class);
+    /** String TranscriptEditor.returnStuff(Object[]) */
+    static final MethodHandle RETURN_STUFF = method(TRANSCRIPT_EDITOR, "returnStuff", String.class, Object[].class);
+    /** TokenSpans TranscriptEditor.tokenizeSpans(String) */
+    static final MethodHandle TOKENIZE_SPANS = method(TRANSCRIPT_EDITOR, "tokenizeSpans", TOKEN_SPANS, String.class);
+    /** String TranscriptEditor.returnStuff(TokenSpans) */
+    static final MethodHandle RETURN_STUFF_SPANS = method(TRANSCRIPT_EDITOR, "returnStuff", String.class, TOKEN_SPANS);
+    /** TokenSpans TokenSpans.tokenize(CharSequence, boolean), on the calling thread */
+    static final MethodHandle TOKENIZE_SPANS_SERIAL = method(TOKEN_SPANS, "tokenize", TOKEN_SPANS, CharSequence.class,
+            boolean.class);
+    /** long TranscriptEditor.cleanStream(Reader, Writer, boolean) */
+    static final MethodHandle CLEAN_STREAM = method(TRANSCRIPT_EDITOR, "cleanStream", long.class,
+            java.io.Reader.class, java.io.Writer.class, boolean.class);
+
+    /** List&lt;String&gt; PassageGenerator.tokenizeString(String) */
+    static final MethodHandle PASSAGE_TOKENIZE_STRING = method(PASSAGE_GENERATOR, "tokenizeString",
+            java.util.List.class, String.class);
+    /** void PassageGenerator.learnFromString(String, int) */
+    static final MethodHandle LEARN_FROM_STRING = method(PASSAGE_GENERATOR, "learnFromString", void.class,
+            String.class, int.class);
+    /** void PassageGenerator.trainModel(NGramModel, int[], int) */
+    static final MethodHandle TRAIN_MODEL = method(PASSAGE_GENERATOR, "trainModel", void.class, N_GRAM_MODEL,
+            int[].class, int.class);
+    /** int[] PassageGenerator.getSequences(NGramModel, IntList, int) */
+    static final MethodHandle GET_SEQUENCES = method(PASSAGE_GENERATOR, "getSequences", int[].class, N_GRAM_MODEL,
+            INT_LIST, int.class);
+    /** String PassageGenerator.generatePassage(int, int) */
+    static final MethodHandle GENERATE_PASSAGE = method(PASSAGE_GENERATOR, "generatePassage", String.class,
+            int.class, int.class);
+    /** void PassageGenerator.setModelNull() */
+    static final MethodHandle SET_MODEL_NULL = method(PASSAGE_GENERATOR, "setModelNull", void.class);
+    /** void PassageGenerator.setOffHeap(boolean) */
+    static final MethodHandle SET_OFF_HEAP = method(PASSAGE_GENERATOR, "setOffHeap", void.class, boolean.class);
+    /** NGramModel PassageGenerator.getModel() */
+    static final MethodHandle GET_MODEL = method(PASSAGE_GENERATOR, "getModel", N_GRAM_MODEL);
+
+    /** Generator Generator.of(NGramModel) */
+    static final MethodHandle GENERATOR_OF = method(GENERATOR, "of", GENERATOR, N_GRAM_MODEL);
+    /** Generator Generator.offHeap(NGramModel) */
+    static final MethodHandle GENERATOR_OFF_HEAP = method(GENERATOR, "offHeap", GENERATOR, N_GRAM_MODEL);
+    /** String Generator.generate(int) */
+    static final MethodHandle GENERATOR_GENERATE = virtual(GENERATOR, "generate", String.class, int.class);
+
+    /** new NGramModel(int) */
+    static final MethodHandle NEW_MODEL = constructor(N_GRAM_MODEL, int.class);
+    /** new IntList() */
+    static final MethodHandle NEW_INT_LIST = constructor(INT_LIST);
+    /** void IntList.add(int) */
+    static final MethodHandle INT_LIST_ADD = virtual(INT_LIST, "add", void.class, int.class);
+    /** Vocabulary NGramModel.vocabulary() */
+    static final MethodHandle VOCABULARY = virtual(N_GRAM_MODEL, "vocabulary", type("Vocabulary"));
+    /** int Vocabulary.id(String) */
+    static final MethodHandle VOCABULARY_ID = virtual(type("Vocabulary"), "id", int.class, String.class);
+
+    private App() {
+    }
+
+    private static Class<?> type(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("The application classes are not on the class path", e);
+        }
+    }
+
+    private static MethodHandles.Lookup lookup(Class<?> owner) throws IllegalAccessException {
+        // private access, so the benchmarks can reach the private training steps
+        return MethodHandles.privateLookupIn(owner, MethodHandles.lookup());
+    }
+
+    private static MethodHandle method(Class<?> owner, String name, Class<?> returnType, Class<?>... parameters) {
+        try {
+            return lookup(owner).findStatic(owner, name, MethodType.methodType(returnType, parameters));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Can't find " + owner.getName() + "." + name, e);
+        }
+    }
+
+    private static MethodHandle virtual(Class<?> owner, String name, Class<?> returnType, Class<?>... parameters) {
+        try {
+            return lookup(owner).findVirtual(owner, name, MethodType.methodType(returnType, parameters));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Can't find " + owner.getName() + "." + name, e);
+        }
+    }
+
+    private static MethodHandle constructor(Class<?> owner, Class<?>... parameters) {
+        try {
+            return lookup(owner).findConstructor(owner, MethodType.methodType(void.class, parameters));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Can't find a constructor of " + owner.getName(), e);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package benchmarks;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Transcript cleaning: removeTimes, tokenizeString and tokenizeSpans (chunked on the common pool, and on one thread
+ * for comparison), the whole clean path the console uses with either, and the streaming cleaner.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx24g")
+public class CleanBenchmark {
+
+    @Param({ "1MB", "100MB", "1GB" })
+    public String size;
+
+    private String transcript;
+    private String withoutTimes;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        transcript = SyntheticTranscript.transcript(SyntheticTranscript.parseSize(size), 42);
+        withoutTimes = (String) App.REMOVE_TIMES.invokeExact(transcript);
+    }
+
+    @Benchmark
+    public String removeTimes() throws Throwable {
+        return (String) App.REMOVE_TIMES.invokeExact(transcript);
+    }
+
+    @Benchmark
+    public Object[] tokenizeString() throws Throwable {
+        return (Object[]) App.TOKENIZE_STRING.invokeExact(withoutTimes);
+    }
+
+    @Benchmark
+    public Object tokenizeSpans() throws Throwable {
+        return App.TOKENIZE_SPANS.invoke(withoutTimes);
+    }
+
+    @Benchmark
+    public Object tokenizeSpansSerial() throws Throwable {
+        return App.TOKENIZE_SPANS_SERIAL.invoke(withoutTimes, true);
+    }
+
+    @Benchmark
+    public String cleanTranscript() throws Throwable {
+        String cleaned = (String) App.REMOVE_TIMES.invokeExact(transcript);
+        Object[] tokens = (Object[]) App.TOKENIZE_STRING.invokeExact(cleaned);
+        return (String) App.RETURN_STUFF.invokeExact(tokens);
+    }
+
+    @Benchmark
+    public String cleanTranscriptSpans() throws Throwable {
+        String cleaned = (String) App.REMOVE_TIMES.invokeExact(transcript);
+        Object tokens = App.TOKENIZE_SPANS.invoke(cleaned);
+        return (String) App.RETURN_STUFF_SPANS.invoke(tokens);
+    }
+
+    @Benchmark
+    public long cleanStream() throws Throwable {
+        Reader in = new StringReader(transcript);
+        Writer out = Writer.nullWriter();
+        return (long) App.CLEAN_STREAM.invokeExact(in, out, true);
+    }
+}
@@ -0,0 +1,67 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Passage generation from a model trained on the synthetic corpus. SampleTime mode gives the latency percentiles of
+ * single passages. generateShared uses one Generator for every benchmark thread, so running it with -t shows how
+ * generation scales with threads. The backend parameter compares the trained model's heap tables with an off-heap
+ * copy of them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx24g")
+public class GenerateBenchmark {
+
+    @Param({ "1MB", "100MB", "1GB" })
+    public String size;
+
+    @Param({ "1", "2", "3" })
+    public int k;
+
+    @Param({ "100", "1000" })
+    public int length;
+
+    @Param({ "heap", "offHeap" })
+    public String backend;
+
+    private Object generator;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        boolean offHeap = backend.equals("offHeap");
+        App.SET_MODEL_NULL.invoke();
+        App.SET_OFF_HEAP.invoke(offHeap);
+        App.LEARN_FROM_STRING.invoke(SyntheticTranscript.text(SyntheticTranscript.parseSize(size), 42), k);
+        // build the sampling tables before measuring
+        App.GENERATE_PASSAGE.invoke(length, k);
+        Object model = App.GET_MODEL.invoke();
+        generator = offHeap ? App.GENERATOR_OFF_HEAP.invoke(model) : App.GENERATOR_OF.invoke(model);
+    }
+
+    @Benchmark
+    public String generatePassage() throws Throwable {
+        return (String) App.GENERATE_PASSAGE.invokeExact(length, k);
+    }
+
+    @Benchmark
+    public String generateShared() throws Throwable {
+        return (String) App.GENERATOR_GENERATE.invoke(generator, length);
+    }
+}
@@ -0,0 +1,136 @@
+package benchmarks;
+
+import java.util.Random;
+
+/**
+ * Builds deterministic fake transcripts for the benchmarks: time-stamped lines from a few speakers, Zipf-distributed
+ * words, numbers, ordinals, percents, sentence punctuation and paragraph breaks, in a mix of line endings.
+ */
+final class SyntheticTranscript {
+
+    private static final String[] SPEAKERS = { "SEN. SMITH:", "Speaker 2:", "THE PRESIDENT:", "MODERATOR:" };
+    private static final String[] ENDINGS = { ".", ".", ".", "?", "!" };
+    private static final int VOCABULARY_SIZE = 20_000;
+
+    private SyntheticTranscript() {
+    }
+
+    /**
+     * Parses sizes such as "1MB", "100MB" and "1GB".
+     *
+     * @param size the size
+     * @return the number of chars
+     */
+    static int parseSize(String size) {
+        String digits = size.replaceAll("[^0-9]", "");
+        long value = Long.parseLong(digits);
+        if (size.endsWith("GB")) {
+            value <<= 30;
+        }
+        else if (size.endsWith("MB")) {
+            value <<= 20;
+        }
+        else if (size.endsWith("KB")) {
+            value <<= 10;
+        }
+        // a String can't hold more than this
+        return (int) Math.min(value, Integer.MAX_VALUE - 16);
+    }
+
+    /**
+     * Makes a transcript with time stamps and speaker labels.
+     *
+     * @param chars roughly how many chars to make
+     * @param seed the random seed
+     * @return the transcript
+     */
+    static String transcript(int chars, long seed) {
+        return build(chars, seed, true);
+    }
+
+    /**
+     * Makes plain text of the same style, without time stamps or speakers.
+     *
+     * @param chars roughly how many chars to make
+     * @param seed the random seed
+     * @return the text
+     */
+    static String text(int chars, long seed) {
+        return build(chars, seed, false);
+    }
+
+    private static String build(int chars, long seed, boolean timestamps) {
+        Random random = new Random(seed);
+        String[] words = words(random);
+        StringBuilder sb = new StringBuilder(chars + 256);
+        int seconds = 0;
+        while (sb.length() < chars) {
+            if (timestamps) {
+                seconds += 1 + random.nextInt(30);
+                sb.append('(');
+                twoDigits(sb, seconds / 3600).append(':');
+                twoDigits(sb, seconds / 60 % 60).append(':');
+                twoDigits(sb, seconds % 60).append(") ");
+                sb.append(SPEAKERS[random.nextInt(SPEAKERS.length)]).append(' ');
+            }
+            int sentences = 1 + random.nextInt(4);
+            for (int s = 0; s < sentences; s++) {
+                int length = 4 + random.nextInt(16);
+                for (int w = 0; w < length; w++) {
+                    appendWord(sb, random, words, w == 0);
+                    sb.append(w == length - 1 ? "" : " ");
+                }
+                sb.append(ENDINGS[random.nextInt(ENDINGS.length)]).append(' ');
+            }
+            // mostly single line breaks, some paragraph breaks, some Windows line endings
+            int ending = random.nextInt(10);
+            sb.append(ending < 6 ? "\n" : ending < 8 ? "\r\n" : ending < 9 ? "\n\n" : "\r\n\r\n\r\n");
+        }
+        return sb.toString();
+    }
+
+    private static StringBuilder twoDigits(StringBuilder sb, int value) {
+        return sb.append((char) ('0' + value / 10 % 10)).append((char) ('0' + value % 10));
+    }
+
+    private static void appendWord(StringBuilder sb, Random random, String[] words, boolean capitalize) {
+        int kind = random.nextInt(100);
+        if (kind < 2) {
+            sb.append(random.nextInt(1000));
+        }
+        else if (kind < 3) {
+            int n = 1 + random.nextInt(30);
+            sb.append(n).append(n % 10 == 1 ? "st" : n % 10 == 2 ? "nd" : n % 10 == 3 ? "rd" : "th");
+        }
+        else if (kind < 4) {
+            sb.append(random.nextInt(100)).append('%');
+        }
+        else {
+            // Zipf-like: small ids are much more common
+            int id = (int) Math.min(VOCABULARY_SIZE - 1, Math.pow(VOCABULARY_SIZE, random.nextDouble()) - 1);
+            String word = words[id];
+            if (capitalize) {
+                sb.append(Character.toUpperCase(word.charAt(0))).append(word, 1, word.length());
+            }
+            else {
+                sb.append(word);
+            }
+        }
+    }
+
+    private static String[] words(Random random) {
+        String[] words = new String[VOCABULARY_SIZE];
+        for (int i = 0; i < words.length; i++) {
+            StringBuilder word = new StringBuilder();
+            int length = 2 + Math.min(i % 11, random.nextInt(10));
+            for (int c = 0; c < length; c++) {
+                word.append((char) ('a' + random.nextInt(26)));
+            }
+            if (i % 50 == 7) {
+                word.insert(length - 1, '\'');
+            }
+            words[i] = word.toString();
+        }
+        return words;
+    }
+}
@@ -0,0 +1,73 @@
+package benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Passage model training: numbering the k-token sequences (getSequences), counting the transitions (trainModel), and
+ * the whole learnFromString path from raw text. Every operation trains a fresh model.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx24g")
+public class TrainBenchmark {
+
+    @Param({ "1MB", "100MB", "1GB" })
+    public String size;
+
+    @Param({ "1", "2", "3" })
+    public int k;
+
+    private String text;
+    private Object tokens;
+    private int[] sequences;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        text = SyntheticTranscript.text(SyntheticTranscript.parseSize(size), 42);
+
+        Object model = App.NEW_MODEL.invoke(k);
+        Object vocabulary = App.VOCABULARY.invoke(model);
+        tokens = App.NEW_INT_LIST.invoke();
+        for (Object token : (List<?>) App.PASSAGE_TOKENIZE_STRING.invoke(text)) {
+            App.INT_LIST_ADD.invoke(tokens, (int) App.VOCABULARY_ID.invoke(vocabulary, (String) token));
+        }
+        sequences = (int[]) App.GET_SEQUENCES.invoke(model, tokens, k);
+    }
+
+    @Benchmark
+    public int[] getSequences() throws Throwable {
+        Object model = App.NEW_MODEL.invoke(k);
+        return (int[]) App.GET_SEQUENCES.invoke(model, tokens, k);
+    }
+
+    @Benchmark
+    public Object trainModel() throws Throwable {
+        Object model = App.NEW_MODEL.invoke(k);
+        App.TRAIN_MODEL.invoke(model, sequences, k);
+        return model;
+    }
+
+    @Benchmark
+    public Object learnFromString() throws Throwable {
+        App.SET_MODEL_NULL.invoke();
+        App.LEARN_FROM_STRING.invoke(text, k);
+        return App.GET_MODEL.invoke();
+    }
+}
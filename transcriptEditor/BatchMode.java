@@ -0,0 +1,429 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Command line mode for unattended runs. Every file under an input directory is cleaned, or used to train a model and
+ * generate a passage, and the result is written to the same relative path under an output directory. Files are
+ * processed concurrently on a fixed number of worker threads, and a throughput summary is printed at the end.
+ *
+ * With --update-model, the files are instead learned into a saved model, which is loaded if it exists and saved
+ * again, so a growing corpus never has to be trained from scratch. --fingerprints keeps a set of what was learned next
+ * to it, so text that comes in again is skipped.
+ *
+ * Usage: --input DIR --output DIR [--text] [--generate] [--k N] [--length N] [--threads N] [--seed N]
+ * [--labels FILE] [--speakers FILE] [--memory-budget MB] [--metrics FILE], or --input DIR --update-model FILE [--k N]
+ * [--threads N] [--memory-budget MB] [--metrics FILE] [--fingerprints FILE]
+ */
+public class BatchMode {
+
+    private static final String USAGE = "Usage: TranscriptEditorMain --input DIR --output DIR [options]\n"
+            + "   or: TranscriptEditorMain --input DIR --update-model FILE [--k N] [--threads N] [--memory-budget MB]\n"
+            + "                            [--fingerprints FILE]\n"
+            + "  --input DIR    directory of files to process, searched recursively\n"
+            + "  --output DIR   where to write the results, under the same relative paths\n"
+            + "  --text         the files are simple text instead of transcripts\n"
+            + "  --generate     generate a passage from each file instead of cleaning it\n"
+            + "  --k N          words per key when generating (default 2)\n"
+            + "  --length N     minimum words per passage, more than k (default 100)\n"
+            + "  --threads N    worker threads (default: number of processors)\n"
+            + "  --seed N       seed for reproducible passages (default: random)\n"
+            + "  --labels FILE  speaker label patterns to remove, one per line, # for any number\n"
+            + "                 (default: Speaker #:, Speaker #, [#:#:#] and [#:#])\n"
+            + "  --speakers FILE  speaker names to remove where followed by a colon, one per line\n"
+            + "  --update-model FILE  learn the files into the model saved in FILE, made with --k if it doesn't exist\n"
+            + "  --memory-budget MB  prune rare transitions to keep each model under MB megabytes (default: no limit)\n"
+            + "  --metrics FILE  write the time, throughput and generation latency of each stage to FILE as JSON\n"
+            + "  --fingerprints FILE  with --update-model, skip documents and paragraphs already learned, as recorded\n"
+            + "                 in FILE, and record the new ones";
+
+    // exit codes
+    private static final int OK = 0;
+    private static final int FAILED_FILES = 1;
+    private static final int BAD_ARGUMENTS = 2;
+
+    private Path input;
+    private Path output;
+    private boolean isTranscript = true;
+    private boolean generate;
+    private int k = 2;
+    private int length = 100;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private Long seed;
+    // bytes, 0 for no limit
+    private long memoryBudget;
+    private Path labelFile;
+    private Path speakerFile;
+    private Path modelFile;
+    private Path metricsFile;
+    private Path fingerprintFile;
+    private SpeakerLabels labels = SpeakerLabels.defaults();
+
+    /**
+     * What processing one file produced.
+     */
+    private static class Result {
+        final long bytes;
+        final long tokens;
+
+        Result(long bytes, long tokens) {
+            this.bytes = bytes;
+            this.tokens = tokens;
+        }
+    }
+
+    /**
+     * Parses the arguments, processes the input directory and prints the summary.
+     *
+     * @param args the command line arguments
+     * @return the exit code: 0 if every file was processed, 1 if some failed, 2 if the arguments are wrong
+     */
+    public static int run(String[] args) {
+        BatchMode batch = new BatchMode();
+        String error = batch.parse(args);
+        if (error != null) {
+            System.err.println(error);
+            System.err.println(USAGE);
+            return BAD_ARGUMENTS;
+        }
+        try {
+            Metrics.reset();
+            int code = batch.modelFile != null ? batch.updateModel(System.out, System.err)
+                    : batch.process(System.out, System.err);
+            if (batch.metricsFile != null) {
+                try (Writer out = Files.newBufferedWriter(batch.metricsFile, StandardCharsets.UTF_8)) {
+                    Metrics.writeJson(out);
+                }
+            }
+            return code;
+        } catch (IOException e) {
+            System.err.println("Batch run failed: " + e);
+            return FAILED_FILES;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return FAILED_FILES;
+        }
+    }
+
+    /**
+     * Reads the options.
+     *
+     * @return a description of what is wrong with them, or null if they are fine
+     */
+    private String parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if (option.equals("--text")) {
+                isTranscript = false;
+                continue;
+            }
+            if (option.equals("--generate")) {
+                generate = true;
+                continue;
+            }
+            if (i + 1 == args.length) {
+                return "Missing value for " + option;
+            }
+            String value = args[++i];
+            if (option.equals("--input")) {
+                input = Paths.get(value);
+            }
+            else if (option.equals("--output")) {
+                output = Paths.get(value);
+            }
+            else if (option.equals("--labels")) {
+                labelFile = Paths.get(value);
+            }
+            else if (option.equals("--speakers")) {
+                speakerFile = Paths.get(value);
+            }
+            else if (option.equals("--update-model")) {
+                modelFile = Paths.get(value);
+            }
+            else if (option.equals("--metrics")) {
+                metricsFile = Paths.get(value);
+            }
+            else if (option.equals("--fingerprints")) {
+                fingerprintFile = Paths.get(value);
+            }
+            else if (option.equals("--seed") && InputValidation.canParseInt(value) && value.length() <= 18) {
+                seed = Long.parseLong(value);
+            }
+            else if (!InputValidation.canParseInt(value) || value.startsWith("-") || value.length() > 9) {
+                return "Expected a positive number or a known option at " + option + " " + value;
+            }
+            else if (option.equals("--k")) {
+                k = Integer.parseInt(value);
+            }
+            else if (option.equals("--length")) {
+                length = Integer.parseInt(value);
+            }
+            else if (option.equals("--threads")) {
+                threads = Integer.parseInt(value);
+            }
+            else if (option.equals("--memory-budget")) {
+                memoryBudget = Long.parseLong(value) << 20;
+            }
+            else {
+                return "Unknown option " + option;
+            }
+        }
+        if (input == null || (output == null) == (modelFile == null)) {
+            return "--input and either --output or --update-model are needed";
+        }
+        if (fingerprintFile != null && modelFile == null) {
+            return "--fingerprints only works with --update-model";
+        }
+        if (!Files.isDirectory(input)) {
+            return input + " is not a directory";
+        }
+        if (k <= 0 || threads <= 0) {
+            return "--k and --threads must be positive";
+        }
+        if (length <= k) {
+            return "--length must be more than --k";
+        }
+        if (labelFile != null || speakerFile != null) {
+            try {
+                List<String> patterns = labelFile != null ? SpeakerLabels.readList(labelFile)
+                        : SpeakerLabels.DEFAULT_PATTERNS;
+                List<String> names = speakerFile != null ? SpeakerLabels.readList(speakerFile)
+                        : Collections.<String>emptyList();
+                labels = new SpeakerLabels(patterns, names);
+            } catch (IOException e) {
+                return "Couldn't read the speaker labels: " + e.getMessage();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Processes every file on a fixed pool of worker threads.
+     *
+     * @param out where the summary goes
+     * @param err where failures are reported
+     * @return the exit code
+     */
+    private int process(PrintStream out, PrintStream err) throws IOException, InterruptedException {
+        List<Path> files = listFiles();
+        // the input directory may be inside the output directory, so don't pick up earlier results
+        Path outputDirectory = output.toAbsolutePath().normalize();
+        files.removeIf(file -> file.toAbsolutePath().normalize().startsWith(outputDirectory));
+
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Result>> futures = new ArrayList<Future<Result>>();
+        for (int i = 0; i < files.size(); i++) {
+            futures.add(pool.submit(task(files.get(i), i)));
+        }
+        pool.shutdown();
+
+        int failed = 0;
+        long bytes = 0;
+        long tokens = 0;
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                Result result = futures.get(i).get();
+                bytes += result.bytes;
+                tokens += result.tokens;
+            } catch (ExecutionException e) {
+                failed++;
+                err.println("Couldn't process " + files.get(i) + ": " + e.getCause());
+            }
+        }
+        double seconds = Math.max(System.nanoTime() - start, 1) / 1e9;
+
+        int processed = files.size() - failed;
+        out.println(String.format(Locale.ROOT, "%s %d files (%d failed) in %.2f s: %.1f files/s, %.1f MB/s, "
+                + "%.0f tokens/s", generate ? "Generated from" : "Cleaned", processed, failed, seconds,
+                processed / seconds, bytes / seconds / (1 << 20), tokens / seconds));
+        return failed == 0 ? OK : FAILED_FILES;
+    }
+
+    /**
+     * Learns every file into the saved model, in the order of their paths, and saves it again. Only the new files are
+     * tokenized; the model is written to a temporary file first, so a failed save leaves the old model in place. If a
+     * file can't be read, nothing is saved.
+     *
+     * @param out where the summary goes
+     * @param err where the failure goes
+     * @return the exit code
+     */
+    private int updateModel(PrintStream out, PrintStream err) throws IOException {
+        List<Path> files = listFiles();
+        List<String> filepaths = new ArrayList<String>();
+        long bytes = 0;
+        for (Path file : files) {
+            filepaths.add(file.toString());
+            bytes += Files.size(file);
+        }
+
+        long start = System.nanoTime();
+        PassageGenerator.setModelNull();
+        PassageGenerator.setMemoryBudget(memoryBudget);
+        int size = Files.exists(modelFile) ? PassageGenerator.loadModel(modelFile.toString()) : k;
+        Fingerprints fingerprints = null;
+        if (fingerprintFile != null) {
+            fingerprints = Files.exists(fingerprintFile) ? Fingerprints.load(fingerprintFile) : new Fingerprints();
+            PassageGenerator.setFingerprints(fingerprints);
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            PassageGenerator.learnFromFiles(filepaths, size, pool);
+        } catch (IOException e) {
+            err.println("Couldn't learn the files, " + modelFile + " is unchanged: " + e);
+            return FAILED_FILES;
+        } finally {
+            pool.shutdown();
+        }
+        saveReplacing(modelFile, path -> PassageGenerator.saveModel(path.toString()));
+        if (fingerprints != null) {
+            saveReplacing(fingerprintFile, fingerprints::save);
+        }
+        double seconds = Math.max(System.nanoTime() - start, 1) / 1e9;
+
+        NGramModel model = PassageGenerator.getModel();
+        Metrics.recordModel(model);
+        out.println(String.format(Locale.ROOT, "Added %d files to %s in %.2f s: %.1f files/s, %.1f MB/s. It has %d "
+                + "states and %d transitions", files.size(), modelFile, seconds, files.size() / seconds,
+                bytes / seconds / (1 << 20), model.stateCount(), model.transitionCount()));
+        if (model.droppedTransitions() > 0) {
+            out.println(droppedSummary(model));
+        }
+        if (model.overBudget()) {
+            out.println(overBudgetSummary(model));
+        }
+        if (fingerprints != null) {
+            out.println(String.format(Locale.ROOT, "Skipped %d repeated documents and %d repeated paragraphs, %d "
+                    + "tokens in all. %s has %d fingerprints", fingerprints.skippedDocuments(),
+                    fingerprints.skippedParagraphs(), fingerprints.skippedTokens(), fingerprintFile,
+                    fingerprints.size()));
+        }
+        return OK;
+    }
+
+    /**
+     * Writes a file somewhere else.
+     */
+    private interface Save {
+        void to(Path path) throws IOException;
+    }
+
+    /**
+     * Writes a file to a temporary file first and then moves it in place, so a failed save leaves the old file. The
+     * new file gets the old one's permissions, where the file system has POSIX permissions.
+     */
+    private static void saveReplacing(Path file, Save save) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        Path temporary = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            // createTempFile makes the file readable by its owner only
+            if (Files.exists(file)
+                    && Files.getFileStore(file).supportsFileAttributeView(PosixFileAttributeView.class)) {
+                Files.setPosixFilePermissions(temporary, Files.getPosixFilePermissions(file));
+            }
+            save.to(temporary);
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * @return a warning that the vocabulary alone takes more than the memory budget
+     */
+    private static String overBudgetSummary(NGramModel model) {
+        return String.format(Locale.ROOT, "Couldn't keep the model within %.1f MB: its vocabulary alone takes %.1f MB",
+                model.memoryBudget() / (double) (1 << 20), model.vocabulary().memoryBytes() / (double) (1 << 20));
+    }
+
+    /**
+     * @return what pruning dropped from a model to keep it within the memory budget
+     */
+    private static String droppedSummary(NGramModel model) {
+        return String.format(Locale.ROOT, "Pruned %d transitions seen %d times in all, and %d states, to stay within "
+                + "%.1f MB", model.droppedTransitions(), model.droppedWeight(), model.droppedStates(),
+                model.memoryBudget() / (double) (1 << 20));
+    }
+
+    /**
+     * @return every regular file under the input directory, sorted by path
+     */
+    private List<Path> listFiles() throws IOException {
+        try (Stream<Path> walk = Files.walk(input)) {
+            return walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Makes the job for one file.
+     *
+     * @param file the input file
+     * @param index the file's position in the sorted input, which picks its random seed
+     * @return the job, returning how many bytes and tokens it read
+     */
+    private Callable<Result> task(final Path file, final int index) {
+        return new Callable<Result>() {
+            @Override
+            public Result call() throws IOException {
+                Path target = output.resolve(input.relativize(file).toString());
+                if (target.getParent() != null) {
+                    Files.createDirectories(target.getParent());
+                }
+                long bytes = Files.size(file);
+                if (generate) {
+                    return new Result(bytes, generate(file, target, index));
+                }
+                try (Reader in = CaptionReader.open(file);
+                        Writer out = Files.newBufferedWriter(target, StandardCharsets.UTF_8)) {
+                    return new Result(bytes, TranscriptEditor.cleanStream(in, out, isTranscript, labels));
+                }
+            }
+        };
+    }
+
+    /**
+     * Trains a model on one file and writes a passage generated from it. A transcript is cleaned first, like the
+     * cleaned output, so no times or speaker labels are learned.
+     *
+     * @return the number of tokens read
+     */
+    private long generate(Path file, Path target, int index) throws IOException {
+        NGramModel model = new NGramModel(k);
+        model.setMemoryBudget(memoryBudget);
+        IntList tokens = isTranscript ? PassageGenerator.readTranscriptTokens(file, model.vocabulary(), labels)
+                : PassageGenerator.readTokens(file, model.vocabulary());
+        int count = tokens.size();
+        PassageGenerator.learnFromTokens(model, tokens, k);
+        SplittableRandom random = seed != null ? new SplittableRandom(seed + index) : new SplittableRandom();
+        String passage = PassageGenerator.generatePassage(model, length, random);
+        Metrics.recordModel(model);
+        if (passage == null) {
+            throw new IOException("No state in the file starts with a capital");
+        }
+        try (Writer out = Files.newBufferedWriter(target, StandardCharsets.UTF_8)) {
+            out.write(passage);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,447 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Reads the spoken text of a SubRip (.srt) or WebVTT (.vtt) caption file, a line at a time, so captions can go
+ * straight into the tokenizer without being flattened first. Memory use depends only on the longest line.
+ *
+ * A caption file is a list of blocks separated by blank lines. The cue number or id, the timing line with its cue
+ * settings, and the WebVTT header and NOTE, STYLE and REGION blocks are skipped. Markup such as &lt;i&gt;, &lt;v
+ * Speaker&gt; and {\an8} is removed, and character references such as &amp;amp; are decoded. The text lines of every
+ * cue are returned each followed by a space and a single line break, so cues run on like the lines of a transcript
+ * without making paragraph breaks, and their words stay apart where removeTimes joins lines that have no time.
+ */
+public class CaptionReader extends Reader {
+
+    /**
+     * The caption formats.
+     */
+    public enum Format {
+        SRT,
+        VTT
+    }
+
+    // where the reader is in the file
+    private enum State {
+        // the WebVTT header, up to the first blank line
+        HEADER,
+        // blank lines before a block
+        BETWEEN,
+        // after a cue number or id, expecting the timing line
+        AFTER_ID,
+        // the text lines of a cue
+        TEXT,
+        // a block that isn't a cue
+        SKIPPED
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // how much of a file detect reads
+    private static final int HEAD_SIZE = 4096;
+
+    private final Reader in;
+    private final Format format;
+    private State state;
+
+    // input chars, read from position to limit
+    private char[] buffer = new char[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private boolean endOfInput;
+    private boolean started;
+    // the line found by nextLine, in buffer
+    private int lineStart;
+    private int lineEnd;
+
+    // text ready to return, from textPosition to textLimit
+    private char[] text = new char[BUFFER_SIZE];
+    private int textPosition;
+    private int textLimit;
+
+    /**
+     * @param in the caption file's text
+     * @param format the format it is in
+     */
+    public CaptionReader(Reader in, Format format) {
+        this.in = in;
+        this.format = format;
+        state = format == Format.VTT ? State.HEADER : State.BETWEEN;
+    }
+
+    /**
+     * Opens a file for reading, as captions if detect finds it is a caption file and as plain text otherwise.
+     *
+     * @param path the file
+     * @return a Reader of the file's text, or of just the spoken text if it is a caption file
+     * @throws IOException if the file can't be opened
+     */
+    public static Reader open(Path path) throws IOException {
+        Format format = detect(path);
+        if (format == null) {
+            return Files.newBufferedReader(path, StandardCharsets.UTF_8);
+        }
+        return new CaptionReader(new InputStreamReader(Files.newInputStream(path), StandardCharsets.UTF_8), format);
+    }
+
+    /**
+     * Tells a caption file from its first few KB.
+     *
+     * @param path the file
+     * @return the file's caption format, or null if it isn't a caption file
+     * @throws IOException if the file can't be read
+     */
+    public static Format detect(Path path) throws IOException {
+        byte[] head = new byte[HEAD_SIZE];
+        int length = 0;
+        try (InputStream stream = Files.newInputStream(path)) {
+            int read;
+            while (length < head.length && (read = stream.read(head, length, head.length - length)) > 0) {
+                length += read;
+            }
+        }
+        return detect(new String(head, 0, length, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Tells a caption file from its start. A WebVTT file starts with the line WEBVTT, and a SubRip file with a cue
+     * number and a timing line, or just the timing line.
+     *
+     * @param head the start of the file
+     * @return the caption format, or null if it isn't a caption file
+     */
+    public static Format detect(String head) {
+        int start = head.startsWith("\uFEFF") ? 1 : 0;
+        if (head.startsWith("WEBVTT", start)) {
+            int after = start + 6;
+            if (after == head.length() || head.charAt(after) == ' ' || head.charAt(after) == '\t'
+                    || head.charAt(after) == '\r' || head.charAt(after) == '\n') {
+                return Format.VTT;
+            }
+            return null;
+        }
+        while (start < head.length() && Character.isWhitespace(head.charAt(start))) {
+            start++;
+        }
+        int end = lineEnd(head, start);
+        if (isNumber(head, start, end)) {
+            start = end;
+            if (start < head.length() && head.charAt(start) == '\r') {
+                start++;
+            }
+            if (start < head.length() && head.charAt(start) == '\n') {
+                start++;
+            }
+            end = lineEnd(head, start);
+        }
+        if (end > start && isDigit(head.charAt(start)) && head.substring(start, end).contains("-->")) {
+            return Format.SRT;
+        }
+        return null;
+    }
+
+    private static int lineEnd(String text, int start) {
+        int end = start;
+        while (end < text.length() && text.charAt(end) != '\n' && text.charAt(end) != '\r') {
+            end++;
+        }
+        return end;
+    }
+
+    private static boolean isNumber(CharSequence line, int start, int end) {
+        while (end > start && Character.isWhitespace(line.charAt(end - 1))) {
+            end--;
+        }
+        if (start == end) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (!isDigit(line.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    @Override
+    public int read(char[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (textPosition == textLimit && !produce()) {
+            return -1;
+        }
+        int count = Math.min(length, textLimit - textPosition);
+        System.arraycopy(text, textPosition, buffer, offset, count);
+        textPosition += count;
+        return count;
+    }
+
+    /**
+     * Reads lines until about half a buffer of text is ready or the input ends.
+     *
+     * @return false if there is no more text
+     */
+    private boolean produce() throws IOException {
+        textPosition = 0;
+        textLimit = 0;
+        while (textLimit < BUFFER_SIZE / 2 && nextLine()) {
+            boolean blank = isBlank();
+            if (state == State.TEXT) {
+                if (blank) {
+                    state = State.BETWEEN;
+                }
+                else {
+                    appendText();
+                }
+            }
+            else if (state == State.BETWEEN) {
+                if (blank) {
+                    continue;
+                }
+                if (isTiming()) {
+                    state = State.TEXT;
+                }
+                else if (format == Format.VTT && isKeywordBlock()) {
+                    state = State.SKIPPED;
+                }
+                else {
+                    state = State.AFTER_ID;
+                }
+            }
+            else if (state == State.AFTER_ID) {
+                if (blank) {
+                    state = State.BETWEEN;
+                }
+                else {
+                    state = isTiming() ? State.TEXT : State.SKIPPED;
+                }
+            }
+            else if (blank) {
+                // the end of the header or of a skipped block
+                state = State.BETWEEN;
+            }
+        }
+        return textLimit > 0;
+    }
+
+    private boolean isBlank() {
+        for (int i = lineStart; i < lineEnd; i++) {
+            if (!Character.isWhitespace(buffer[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isTiming() {
+        for (int i = lineStart; i + 3 <= lineEnd; i++) {
+            if (buffer[i] == '-' && buffer[i + 1] == '-' && buffer[i + 2] == '>') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the line starts a WebVTT block that isn't a cue: NOTE, STYLE or REGION
+     */
+    private boolean isKeywordBlock() {
+        return startsWord("NOTE") || startsWord("STYLE") || startsWord("REGION");
+    }
+
+    private boolean startsWord(String word) {
+        int end = lineStart + word.length();
+        if (end > lineEnd) {
+            return false;
+        }
+        for (int i = 0; i < word.length(); i++) {
+            if (buffer[lineStart + i] != word.charAt(i)) {
+                return false;
+            }
+        }
+        return end == lineEnd || buffer[end] == ' ' || buffer[end] == '\t';
+    }
+
+    /**
+     * Adds the current line to the text, without its markup, and a space and a line break.
+     */
+    private void appendText() {
+        if (text.length - textLimit < lineEnd - lineStart + 2) {
+            char[] larger = new char[Math.max(text.length * 2, textLimit + lineEnd - lineStart + 2)];
+            System.arraycopy(text, 0, larger, 0, textLimit);
+            text = larger;
+        }
+        int i = lineStart;
+        while (i < lineEnd) {
+            char c = buffer[i];
+            int end = -1;
+            if (c == '<') {
+                end = indexOf('>', i + 1);
+            }
+            else if (c == '{' && i + 1 < lineEnd && buffer[i + 1] == '\\') {
+                end = indexOf('}', i + 2);
+            }
+            else if (c == '&') {
+                end = reference(i);
+            }
+            if (end < 0) {
+                text[textLimit++] = c;
+                i++;
+            }
+            else {
+                i = end;
+            }
+        }
+        text[textLimit++] = ' ';
+        text[textLimit++] = '\n';
+    }
+
+    /**
+     * @return the index after the given char in the current line, or -1 if it isn't there
+     */
+    private int indexOf(char c, int from) {
+        for (int i = from; i < lineEnd; i++) {
+            if (buffer[i] == c) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Decodes a character reference such as &amp;amp; or &amp;#39; into the text. A reference decodes to at most as
+     * many chars as it takes, so the text has room for it.
+     *
+     * @param start the index of the ampersand
+     * @return the index after the reference, or -1 if there isn't a known one there
+     */
+    private int reference(int start) {
+        int end = indexOf(';', start + 1);
+        if (end < 0 || end - start > 10) {
+            return -1;
+        }
+        String name = new String(buffer, start + 1, end - start - 2);
+        int code = -1;
+        if (name.startsWith("#x") || name.startsWith("#X")) {
+            code = parse(name.substring(2), 16);
+        }
+        else if (name.startsWith("#")) {
+            code = parse(name.substring(1), 10);
+        }
+        else if (name.equals("amp")) {
+            code = '&';
+        }
+        else if (name.equals("lt")) {
+            code = '<';
+        }
+        else if (name.equals("gt")) {
+            code = '>';
+        }
+        else if (name.equals("quot")) {
+            code = '"';
+        }
+        else if (name.equals("apos")) {
+            code = '\'';
+        }
+        else if (name.equals("nbsp")) {
+            code = ' ';
+        }
+        else if (name.equals("lrm") || name.equals("rlm")) {
+            return end;
+        }
+        if (code < 0 || !Character.isValidCodePoint(code)) {
+            return -1;
+        }
+        textLimit += Character.toChars(code, text, textLimit);
+        return end;
+    }
+
+    private static int parse(String digits, int radix) {
+        try {
+            return Integer.parseInt(digits, radix);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Finds the next line, reading more input as needed. Lines end at \n, \r or \r\n.
+     *
+     * @return false at the end of the input
+     */
+    private boolean nextLine() throws IOException {
+        int searched = position;
+        while (true) {
+            int i = searched;
+            while (i < limit && buffer[i] != '\n' && buffer[i] != '\r') {
+                i++;
+            }
+            // a \r at the end of the buffer may be the start of \r\n
+            if (i < limit && (buffer[i] == '\n' || i + 1 < limit || endOfInput)) {
+                lineStart = position;
+                lineEnd = i;
+                position = i + 1;
+                if (buffer[i] == '\r' && position < limit && buffer[position] == '\n') {
+                    position++;
+                }
+                return true;
+            }
+            if (endOfInput) {
+                if (position == limit) {
+                    return false;
+                }
+                lineStart = position;
+                lineEnd = limit;
+                position = limit;
+                return true;
+            }
+            searched = i - position;
+            fill();
+            searched += position;
+        }
+    }
+
+    /**
+     * Moves the rest of the current line to the start of the buffer, and reads more after it.
+     */
+    private void fill() throws IOException {
+        int kept = limit - position;
+        if (kept == buffer.length) {
+            char[] larger = new char[buffer.length * 2];
+            System.arraycopy(buffer, position, larger, 0, kept);
+            buffer = larger;
+        }
+        else {
+            System.arraycopy(buffer, position, buffer, 0, kept);
+        }
+        position = 0;
+        limit = kept;
+        int read = in.read(buffer, limit, buffer.length - limit);
+        if (read < 0) {
+            endOfInput = true;
+        }
+        else {
+            limit += read;
+        }
+        if (!started && limit > 0) {
+            started = true;
+            if (buffer[0] == '\uFEFF') {
+                position = 1;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,253 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reads the console's standard input, typed or piped. Pasted text is read in bulk by readUntil: the raw bytes are
+ * read in large blocks and searched for the line that ends the text, and only then decoded, all at once. No String is
+ * made per line, and the line breaks are kept.
+ *
+ * It is also a Reader for the Scanner that asks the menu questions. A read returns at most one line, so the Scanner
+ * never holds input past the line it was asked for, and readUntil picks up exactly where the Scanner stopped.
+ */
+public class ConsoleInput extends Reader {
+
+    /**
+     * The line that ends pasted text.
+     */
+    public static final String SENTINEL = "-999";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int INITIAL_TEXT_SIZE = 1 << 20;
+
+    private final InputStream in;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+    // bytes read but not decoded yet, ready to fill
+    private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+    // chars decoded but not returned yet, ready to get
+    private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+    // bytes readUntil read past the sentinel line, to be read again before the rest of the input
+    private byte[] pending = new byte[0];
+    private int pendingStart;
+    private boolean endOfInput;
+    private boolean flushed;
+
+    /**
+     * @param in the input, UTF-8 encoded
+     */
+    public ConsoleInput(InputStream in) {
+        this.in = in;
+        chars.flip();
+    }
+
+    /**
+     * Reads up to and including the next line break.
+     */
+    @Override
+    public int read(char[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!chars.hasRemaining() && !fill()) {
+            return -1;
+        }
+        char[] array = chars.array();
+        int start = chars.position();
+        int end = Math.min(chars.limit(), start + length);
+        int i = start;
+        while (i < end && array[i] != '\n') {
+            i++;
+        }
+        if (i < end) {
+            i++;
+        }
+        System.arraycopy(array, start, buffer, offset, i - start);
+        chars.position(i);
+        return i - start;
+    }
+
+    /**
+     * Reads text up to a line that is just the sentinel, or to the end of the input. The line breaks are kept, and
+     * the sentinel line is read but not returned.
+     *
+     * @param sentinel the line that ends the text
+     * @return the text
+     * @throws IOException if reading fails
+     */
+    public String readUntil(String sentinel) throws IOException {
+        byte[] target = sentinel.getBytes(StandardCharsets.UTF_8);
+        // start with what was decoded or read but not returned yet
+        byte[] decoded = chars.toString().getBytes(StandardCharsets.UTF_8);
+        chars.clear().flip();
+        bytes.flip();
+        int undecoded = bytes.remaining();
+        int leftOver = pending.length - pendingStart;
+        byte[] text = new byte[Math.max(INITIAL_TEXT_SIZE, decoded.length + undecoded + leftOver + BUFFER_SIZE)];
+        System.arraycopy(decoded, 0, text, 0, decoded.length);
+        int filled = decoded.length;
+        bytes.get(text, filled, undecoded);
+        bytes.clear();
+        filled += undecoded;
+        System.arraycopy(pending, pendingStart, text, filled, leftOver);
+        filled += leftOver;
+        pending = new byte[0];
+        pendingStart = 0;
+
+        // the next line start to check for the sentinel, -1 until another one is found
+        int lineStart = 0;
+        // the bytes before this were searched for line breaks
+        int searched = 0;
+        while (true) {
+            while (true) {
+                if (lineStart >= 0) {
+                    int after = sentinelEnd(text, lineStart, filled, target);
+                    if (after == -2) {
+                        break;
+                    }
+                    if (after >= 0) {
+                        pending = Arrays.copyOfRange(text, after, filled);
+                        return new String(text, 0, lineStart, StandardCharsets.UTF_8);
+                    }
+                }
+                // only a line that starts like the sentinel can be it
+                lineStart = -1;
+                int i = lineBreak(text, searched, filled);
+                while (i >= 0 && i + 1 < filled && text[i + 1] != target[0]) {
+                    i = lineBreak(text, i + 1, filled);
+                }
+                if (i < 0) {
+                    searched = filled;
+                    break;
+                }
+                searched = i + 1;
+                lineStart = i + 1;
+            }
+            if (endOfInput) {
+                return new String(text, 0, filled, StandardCharsets.UTF_8);
+            }
+            if (text.length - filled < BUFFER_SIZE) {
+                text = Arrays.copyOf(text, text.length * 2);
+            }
+            int read = in.read(text, filled, BUFFER_SIZE);
+            if (read < 0) {
+                endOfInput = true;
+            }
+            else {
+                filled += read;
+            }
+        }
+    }
+
+    /**
+     * @return the index of the first line break in the range, or -1 if there is none
+     */
+    private static int lineBreak(byte[] text, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (text[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Checks whether the sentinel is on a line of its own at the given line start.
+     *
+     * @return the index after the sentinel line's line break, -1 if the line isn't the sentinel, or -2 if more input
+     *         is needed to tell
+     */
+    private int sentinelEnd(byte[] text, int lineStart, int filled, byte[] target) {
+        int end = lineStart + target.length;
+        for (int i = lineStart; i < Math.min(end, filled); i++) {
+            if (text[i] != target[i - lineStart]) {
+                return -1;
+            }
+        }
+        if (end >= filled) {
+            if (endOfInput) {
+                return end == filled ? end : -1;
+            }
+            return -2;
+        }
+        if (text[end] == '\n') {
+            return end + 1;
+        }
+        if (text[end] == '\r') {
+            if (end + 1 < filled) {
+                return text[end + 1] == '\n' ? end + 2 : end + 1;
+            }
+            return endOfInput ? end + 1 : -2;
+        }
+        return -1;
+    }
+
+    /**
+     * Decodes more input after the chars not returned yet. Once anything is decoded it returns rather than read again,
+     * so a typed line comes back at once, while a pipe gives large blocks at each read.
+     *
+     * @return false if nothing more could be decoded because the input has ended
+     */
+    private boolean fill() throws IOException {
+        chars.compact();
+        int before = chars.position();
+        try {
+            while (chars.hasRemaining() && !flushed) {
+                boolean last = exhausted();
+                bytes.flip();
+                CoderResult result = decoder.decode(bytes, chars, last);
+                bytes.compact();
+                if (last && result.isUnderflow()) {
+                    decoder.flush(chars);
+                    flushed = true;
+                }
+                if (chars.position() > before || last) {
+                    break;
+                }
+                readBytes();
+            }
+        } finally {
+            chars.flip();
+        }
+        return chars.remaining() > before;
+    }
+
+    /**
+     * @return true if every byte of the input has been put in the byte buffer
+     */
+    private boolean exhausted() {
+        return endOfInput && pendingStart == pending.length;
+    }
+
+    /**
+     * Reads into the byte buffer, first what readUntil left over and then the input.
+     */
+    private void readBytes() throws IOException {
+        if (pendingStart < pending.length) {
+            int count = Math.min(pending.length - pendingStart, bytes.remaining());
+            bytes.put(pending, pendingStart, count);
+            pendingStart += count;
+        }
+        else if (!endOfInput) {
+            int read = in.read(bytes.array(), bytes.position(), bytes.remaining());
+            if (read < 0) {
+                endOfInput = true;
+            }
+            else {
+                bytes.position(bytes.position() + read);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,457 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Skips training text that was already learned. Each document gets one 64-bit hash over all its tokens, and each
+ * paragraph a few hashes of runs of SHINGLE_WORDS words (shingles), picked by winnowing: of every WINNOW_WINDOW
+ * shingles in a row, the one with the smallest hash. The hashes are kept in a compact set that can be saved and loaded
+ * between runs. A document seen before is skipped entirely; otherwise the paragraphs whose hashes were mostly seen
+ * before, in earlier documents or earlier in the same one, are cut out of it. A paragraph is a near-duplicate when at
+ * least NEAR_DUPLICATE_SHARE of its hashes are in the set, so a copy with a few words changed, added or dropped is
+ * skipped too, while a paragraph that only quotes a sentence from another is learned. Short paragraphs have few
+ * hashes, so a word changed in one of under about 20 words can still make it count as new.
+ *
+ * Paragraphs are compared by their words only, ignoring case and the sentence-ending punctuation, so copies that
+ * differ only in those count as duplicates. Paragraphs of fewer than MIN_PARAGRAPH_WORDS words, such as "Thank you.",
+ * are always kept, since they repeat in text that is not copied.
+ *
+ * Winnowing keeps about 2 / (WINNOW_WINDOW + 1) hashes per word, and the set takes about 12 to 24 bytes per hash.
+ * Any number of threads can filter at once; when two of them learn copies of the same text at the same time, one copy
+ * is kept, whichever gets there first. To keep the same copy on every run, fingerprint the documents on any threads
+ * and claim them in a fixed order, then cut them.
+ */
+public class Fingerprints {
+
+    /**
+     * The fewest words a paragraph must have to be fingerprinted.
+     */
+    public static final int MIN_PARAGRAPH_WORDS = 8;
+
+    /**
+     * The number of words in a row each paragraph hash covers.
+     */
+    public static final int SHINGLE_WORDS = 4;
+
+    /**
+     * The number of shingles in a row of which winnowing keeps one. Any run of SHINGLE_WORDS + WINNOW_WINDOW - 1 words
+     * that two paragraphs share gives them a hash in common.
+     */
+    public static final int WINNOW_WINDOW = 4;
+
+    /**
+     * The least share of a paragraph's hashes that must have been seen before for the paragraph to be skipped.
+     */
+    public static final double NEAR_DUPLICATE_SHARE = 0.6;
+
+    private static final int MAGIC = 0x54454650; // "TEFP"
+    // version 1 had one hash per paragraph
+    private static final int VERSION = 2;
+    private static final int IO_BUFFER_SIZE = 1 << 16;
+    // mixed into document hashes so they can't collide with the paragraph hashes of the same text
+    private static final long DOCUMENT_SEED = 0x5851F42D4C957F2DL;
+    private static final long MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    // open addressing hash set, 0 in empty slots
+    private long[] table = new long[1024];
+    private int size;
+
+    private long skippedDocuments;
+    private long skippedParagraphs;
+    private long skippedTokens;
+
+    /**
+     * Loads a set saved by save.
+     *
+     * @param path the file
+     * @return the set
+     * @throws IOException if the file can't be read or isn't a fingerprint set
+     */
+    public static Fingerprints load(Path path) throws IOException {
+        Fingerprints fingerprints = new Fingerprints();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer in = ByteBuffer.allocate(IO_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            in.flip();
+            fill(channel, in, 16);
+            if (in.getInt() != MAGIC) {
+                throw new IOException(path + " is not a fingerprint set");
+            }
+            int version = in.getInt();
+            if (version != VERSION) {
+                throw new IOException(path + " is a version " + version + " fingerprint set, expected " + VERSION);
+            }
+            long count = in.getLong();
+            // the fingerprints come in the order of their slots, so adding them to a smaller table, which then grows,
+            // would pile them up in long probe runs; size the table for all of them first
+            long capacity = fingerprints.table.length;
+            while (count * 3 > capacity * 2) {
+                capacity *= 2;
+            }
+            if (capacity > 1 << 30) {
+                throw new IOException(path + " has too many fingerprints: " + count);
+            }
+            fingerprints.table = new long[(int) capacity];
+            for (long i = 0; i < count; i++) {
+                if (in.remaining() < 8) {
+                    fill(channel, in, 8);
+                }
+                fingerprints.add(in.getLong());
+            }
+        }
+        return fingerprints;
+    }
+
+    /**
+     * Keeps the bytes not yet read and reads more after them, until at least the given number are ready to get.
+     */
+    private static void fill(FileChannel channel, ByteBuffer in, int needed) throws IOException {
+        in.compact();
+        while (in.position() < needed) {
+            if (channel.read(in) < 0) {
+                throw new IOException("Fingerprint set is truncated");
+            }
+        }
+        in.flip();
+    }
+
+    /**
+     * Writes the set to a file, replacing the file if it exists.
+     *
+     * @param path where to write it
+     * @throws IOException if writing fails
+     */
+    public synchronized void save(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer out = ByteBuffer.allocate(IO_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+            out.putLong(size);
+            for (long fingerprint : table) {
+                if (fingerprint != 0) {
+                    if (out.remaining() < 8) {
+                        drain(channel, out);
+                    }
+                    out.putLong(fingerprint);
+                }
+            }
+            drain(channel, out);
+        }
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer out) throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+
+    /**
+     * @return the number of fingerprints in the set
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of whole documents skipped
+     */
+    public synchronized long skippedDocuments() {
+        return skippedDocuments;
+    }
+
+    /**
+     * @return the number of paragraphs cut out of documents that weren't skipped
+     */
+    public synchronized long skippedParagraphs() {
+        return skippedParagraphs;
+    }
+
+    /**
+     * @return the number of tokens skipped, in whole documents and in paragraphs
+     */
+    public synchronized long skippedTokens() {
+        return skippedTokens;
+    }
+
+    /**
+     * @return whether the fingerprint is in the set
+     */
+    private synchronized boolean contains(long fingerprint) {
+        if (fingerprint == 0) {
+            fingerprint = 1;
+        }
+        int mask = table.length - 1;
+        int slot = (int) (fingerprint ^ fingerprint >>> 32) & mask;
+        while (table[slot] != 0) {
+            if (table[slot] == fingerprint) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Adds a fingerprint.
+     *
+     * @param fingerprint the hash
+     * @return true if it wasn't in the set yet
+     */
+    public synchronized boolean add(long fingerprint) {
+        if (fingerprint == 0) {
+            fingerprint = 1;
+        }
+        int mask = table.length - 1;
+        int slot = (int) (fingerprint ^ fingerprint >>> 32) & mask;
+        while (table[slot] != 0) {
+            if (table[slot] == fingerprint) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = fingerprint;
+        size++;
+        // keep the table at most two thirds full
+        if (size * 3L > table.length * 2L) {
+            long[] old = table;
+            table = new long[old.length * 2];
+            mask = table.length - 1;
+            for (long kept : old) {
+                if (kept != 0) {
+                    int free = (int) (kept ^ kept >>> 32) & mask;
+                    while (table[free] != 0) {
+                        free = (free + 1) & mask;
+                    }
+                    table[free] = kept;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The fingerprints of one document, made by fingerprint without looking at the set, so documents can be
+     * fingerprinted on any number of threads and claimed later in a fixed order.
+     */
+    public static class Document {
+        private final long hash;
+        private final int tokens;
+        // each paragraph's winnowed shingle hashes, none if it is too short to have any, and its length in tokens
+        private final long[][] paragraphs;
+        private final int[] paragraphTokens;
+
+        private Document(long hash, int tokens, long[][] paragraphs, int[] paragraphTokens) {
+            this.hash = hash;
+            this.tokens = tokens;
+            this.paragraphs = paragraphs;
+            this.paragraphTokens = paragraphTokens;
+        }
+    }
+
+    /**
+     * Removes the text already seen from a document, and remembers the rest. The same as cut(tokens, vocabulary,
+     * claim(fingerprint(tokens, vocabulary))).
+     *
+     * @param tokens the document's token ids
+     * @param vocabulary the vocabulary that numbers the tokens
+     * @return the tokens left, the same list if nothing was removed
+     */
+    public IntList filter(IntList tokens, Vocabulary vocabulary) {
+        return cut(tokens, vocabulary, claim(fingerprint(tokens, vocabulary)));
+    }
+
+    /**
+     * Fingerprints a document and its paragraphs. The set isn't touched.
+     *
+     * @param tokens the document's token ids
+     * @param vocabulary the vocabulary that numbers the tokens
+     * @return the fingerprints
+     */
+    public static Document fingerprint(IntList tokens, Vocabulary vocabulary) {
+        int count = tokens.size();
+        int paragraph = vocabulary.find(Tokenizer.PARAGRAPH_TEXT);
+        long[] hashes = new long[count];
+        long document = DOCUMENT_SEED;
+        for (int i = 0; i < count; i++) {
+            hashes[i] = hash(vocabulary.word(tokens.get(i)));
+            document = (document + hashes[i]) * MULTIPLIER;
+        }
+
+        // a paragraph runs up to and including its paragraph break
+        int paragraphCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (tokens.get(i) == paragraph || i == count - 1) {
+                paragraphCount++;
+            }
+        }
+        long[][] paragraphs = new long[paragraphCount][];
+        int[] paragraphTokens = new int[paragraphCount];
+        long[] words = new long[count];
+        int start = 0;
+        for (int p = 0; start < count; p++) {
+            int end = start;
+            int wordCount = 0;
+            while (end < count && tokens.get(end) != paragraph) {
+                if (!isPunctuation(vocabulary.word(tokens.get(end)))) {
+                    words[wordCount++] = hashes[end];
+                }
+                end++;
+            }
+            end = Math.min(end + 1, count);
+            paragraphs[p] = wordCount >= MIN_PARAGRAPH_WORDS ? winnow(words, wordCount) : new long[0];
+            paragraphTokens[p] = end - start;
+            start = end;
+        }
+        return new Document(mix(document ^ count), count, paragraphs, paragraphTokens);
+    }
+
+    /**
+     * Hashes every run of SHINGLE_WORDS words of a paragraph and keeps the smallest hash of every WINNOW_WINDOW in a
+     * row, each position once.
+     *
+     * @param words the hashes of the paragraph's words
+     * @param count how many words the paragraph has, at least SHINGLE_WORDS
+     * @return the hashes kept, none 0
+     */
+    private static long[] winnow(long[] words, int count) {
+        long[] shingles = new long[count - SHINGLE_WORDS + 1];
+        for (int i = 0; i < shingles.length; i++) {
+            long sequence = 0;
+            for (int j = i; j < i + SHINGLE_WORDS; j++) {
+                sequence = (sequence + words[j]) * MULTIPLIER;
+            }
+            // add keeps 0 out of the set as 1, so match that here
+            shingles[i] = mix(sequence);
+            if (shingles[i] == 0) {
+                shingles[i] = 1;
+            }
+        }
+        int window = Math.min(WINNOW_WINDOW, shingles.length);
+        long[] kept = new long[shingles.length];
+        int keptCount = 0;
+        int last = -1;
+        for (int start = 0; start + window <= shingles.length; start++) {
+            // the rightmost smallest hash, so a window that slides on keeps the same pick as long as it can
+            int smallest = start;
+            for (int i = start + 1; i < start + window; i++) {
+                if (shingles[i] <= shingles[smallest]) {
+                    smallest = i;
+                }
+            }
+            if (smallest != last) {
+                kept[keptCount++] = shingles[smallest];
+                last = smallest;
+            }
+        }
+        return Arrays.copyOf(kept, keptCount);
+    }
+
+    /**
+     * Adds a document's fingerprints to the set, and counts what was seen before as skipped. A paragraph is skipped
+     * when at least NEAR_DUPLICATE_SHARE of its hashes were seen before, and only the hashes of the paragraphs kept
+     * are added. When documents share text, the one claimed first keeps it, so claiming in a fixed order gives the
+     * same result on every run.
+     *
+     * @param document what fingerprint made of the document
+     * @return which of the document's paragraphs to keep, or null if the whole document was seen before
+     */
+    public synchronized boolean[] claim(Document document) {
+        if (!add(document.hash)) {
+            skippedDocuments++;
+            skippedTokens += document.tokens;
+            return null;
+        }
+        boolean[] keep = new boolean[document.paragraphs.length];
+        for (int i = 0; i < keep.length; i++) {
+            long[] hashes = document.paragraphs[i];
+            int seen = 0;
+            for (long hash : hashes) {
+                if (contains(hash)) {
+                    seen++;
+                }
+            }
+            keep[i] = hashes.length == 0 || seen < NEAR_DUPLICATE_SHARE * hashes.length;
+            if (keep[i]) {
+                for (long hash : hashes) {
+                    add(hash);
+                }
+            }
+            else {
+                skippedParagraphs++;
+                skippedTokens += document.paragraphTokens[i];
+            }
+        }
+        return keep;
+    }
+
+    /**
+     * Cuts the paragraphs claim didn't keep out of a document.
+     *
+     * @param tokens the document's token ids, the same tokens that were fingerprinted, in any vocabulary
+     * @param vocabulary the vocabulary that numbers the tokens
+     * @param keep what claim returned
+     * @return the tokens left, the same list if nothing was removed
+     */
+    public static IntList cut(IntList tokens, Vocabulary vocabulary, boolean[] keep) {
+        if (keep == null) {
+            return new IntList();
+        }
+        int count = tokens.size();
+        int paragraph = vocabulary.find(Tokenizer.PARAGRAPH_TEXT);
+        IntList kept = null;
+        int start = 0;
+        for (int p = 0; start < count; p++) {
+            int end = start;
+            while (end < count && tokens.get(end) != paragraph) {
+                end++;
+            }
+            end = Math.min(end + 1, count);
+            if (!keep[p]) {
+                if (kept == null) {
+                    kept = new IntList();
+                    for (int i = 0; i < start; i++) {
+                        kept.add(tokens.get(i));
+                    }
+                }
+            }
+            else if (kept != null) {
+                for (int i = start; i < end; i++) {
+                    kept.add(tokens.get(i));
+                }
+            }
+            start = end;
+        }
+        return kept != null ? kept : tokens;
+    }
+
+    private static boolean isPunctuation(String word) {
+        return word.equals(".") || word.equals("?") || word.equals("!");
+    }
+
+    /**
+     * @return a 64-bit hash of the word, ignoring case
+     */
+    private static long hash(String word) {
+        // FNV-1a over the lower-cased chars
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < word.length(); i++) {
+            hash = (hash ^ Character.toLowerCase(word.charAt(i))) * 0x100000001B3L;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * The splitmix64 finalizer, so every bit of the result depends on every bit of the input.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
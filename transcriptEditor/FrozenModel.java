@@ -0,0 +1,353 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.random.RandomGenerator;
+
+/**
+ * A read-only passage model laid out as flat int tables, ready for generation. It is made by
+ * {@link NGramModel#freeze()} or loaded from a snapshot file written by {@link #save}.
+ *
+ * Loading does not read the file into the heap: every table is a view of a memory-mapped region, and token text is
+ * only decoded the first time it is needed, so a model of any size is ready for generation in milliseconds.
+ *
+ * A frozen model can also be copied into direct memory with {@link #offHeap()}, so a large trained model doesn't have
+ * to be saved and loaded to get its tables off the heap. Either way, the garbage collector never scans them. Tables
+ * larger than a buffer can hold, 2 GB, are split over several; see IntTable.
+ *
+ * Nothing changes after construction except the word cache, so any number of threads can sample from one model
+ * without locking.
+ *
+ * Snapshot format (version 4, little-endian). The long tables come first, so they start 8-byte aligned:
+ * header: int magic "TEMD", version, k, vocabulary size V, state count S, transition count E, word byte count B,
+ * sentence-start count T, then the long total weight of the sentence starts
+ * long[S] total weight of each state
+ * long[E] alias cuts of the successors
+ * long[T] alias cuts of the sentence starts
+ * int[V + 1] word offsets into the word bytes
+ * int[S * k] state tokens
+ * int[S + 1] successor start of each state
+ * int[E] successor states, int[E] successor weights, int[E] alias indexes
+ * int[T] sentence-start states, int[T] their alias indexes
+ * int[S] distance of each state to the nearest sentence end, -1 if none
+ * byte[B] the words, UTF-8
+ */
+public class FrozenModel implements PassageModel {
+
+    private static final int MAGIC = 0x54454D44; // "TEMD"
+    // version 3 had int weight totals and alias cuts
+    private static final int VERSION = 4;
+    private static final int HEADER_INTS = 10;
+    // how many bytes save writes at a time
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+    private final int k;
+    private final int stateCount;
+
+    // token text by id, decoded from wordBytes on first use when the model was loaded
+    private final String[] words;
+    private final IntTable wordOffsets;
+    private final ByteBuffer wordBytes;
+
+    // the same tables NGramModel builds for sampling, see there
+    private final IntTable stateTokens;
+    private final IntTable successorStart;
+    private final IntTable successorStates;
+    private final IntTable successorWeights;
+    private final LongTable aliasCuts;
+    private final IntTable aliasIndexes;
+    private final LongTable weightTotals;
+    private final IntTable startStates;
+    private final LongTable startCuts;
+    private final IntTable startAliases;
+    private final long startTotal;
+    private final IntTable distances;
+
+    /**
+     * Wraps tables built on the heap.
+     */
+    FrozenModel(int k, String[] words, int[] stateTokens, int[] successorStart, int[] successorStates,
+            int[] successorWeights, long[] aliasCuts, int[] aliasIndexes, long[] weightTotals, int[] startStates,
+            long[] startCuts, int[] startAliases, long startTotal, int[] distances) {
+        this(k, words, null, null, IntTable.wrap(stateTokens, (successorStart.length - 1) * k),
+                wrap(successorStart), wrap(successorStates), wrap(successorWeights), LongTable.wrap(aliasCuts),
+                wrap(aliasIndexes), LongTable.wrap(weightTotals), wrap(startStates), LongTable.wrap(startCuts),
+                wrap(startAliases), startTotal, wrap(distances));
+    }
+
+    private FrozenModel(int k, String[] words, IntTable wordOffsets, ByteBuffer wordBytes, IntTable stateTokens,
+            IntTable successorStart, IntTable successorStates, IntTable successorWeights, LongTable aliasCuts,
+            IntTable aliasIndexes, LongTable weightTotals, IntTable startStates, LongTable startCuts,
+            IntTable startAliases, long startTotal, IntTable distances) {
+        this.k = k;
+        this.stateCount = (int) (successorStart.size() - 1);
+        this.words = words;
+        this.wordOffsets = wordOffsets;
+        this.wordBytes = wordBytes;
+        this.stateTokens = stateTokens;
+        this.successorStart = successorStart;
+        this.successorStates = successorStates;
+        this.successorWeights = successorWeights;
+        this.aliasCuts = aliasCuts;
+        this.aliasIndexes = aliasIndexes;
+        this.weightTotals = weightTotals;
+        this.startStates = startStates;
+        this.startCuts = startCuts;
+        this.startAliases = startAliases;
+        this.startTotal = startTotal;
+        this.distances = distances;
+    }
+
+    private static IntTable wrap(int[] table) {
+        return IntTable.wrap(table, table.length);
+    }
+
+    /**
+     * Memory-maps a snapshot written by {@link #save}.
+     *
+     * @param path the snapshot file
+     * @return the model
+     * @throws IOException if the file can't be read or isn't a snapshot of a supported version
+     */
+    public static FrozenModel load(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_INTS * 4) {
+                throw new IOException("Model snapshot is truncated");
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_INTS * 4)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException(path + " is not a model snapshot");
+            }
+            if (header.getInt(4) != VERSION) {
+                throw new IOException(path + " is a version " + header.getInt(4) + " snapshot, expected " + VERSION);
+            }
+            int k = header.getInt(8);
+            int vocabularySize = header.getInt(12);
+            int stateCount = header.getInt(16);
+            int transitionCount = header.getInt(20);
+            int wordByteCount = header.getInt(24);
+            int startCount = header.getInt(28);
+            long startTotal = header.getLong(32);
+
+            long position = HEADER_INTS * 4L;
+            LongTable weightTotals = LongTable.map(channel, position, stateCount);
+            position += stateCount * 8L;
+            LongTable aliasCuts = LongTable.map(channel, position, transitionCount);
+            position += transitionCount * 8L;
+            LongTable startCuts = LongTable.map(channel, position, startCount);
+            position += startCount * 8L;
+            IntTable wordOffsets = IntTable.map(channel, position, vocabularySize + 1L);
+            position += (vocabularySize + 1L) * 4;
+            IntTable stateTokens = IntTable.map(channel, position, (long) stateCount * k);
+            position += (long) stateCount * k * 4;
+            IntTable successorStart = IntTable.map(channel, position, stateCount + 1L);
+            position += (stateCount + 1L) * 4;
+            IntTable[] edgeTables = new IntTable[3];
+            for (int i = 0; i < edgeTables.length; i++) {
+                edgeTables[i] = IntTable.map(channel, position, transitionCount);
+                position += transitionCount * 4L;
+            }
+            IntTable[] startTables = new IntTable[2];
+            for (int i = 0; i < startTables.length; i++) {
+                startTables[i] = IntTable.map(channel, position, startCount);
+                position += startCount * 4L;
+            }
+            IntTable distances = IntTable.map(channel, position, stateCount);
+            position += stateCount * 4L;
+            if (position + wordByteCount > channel.size()) {
+                throw new IOException("Model snapshot is truncated");
+            }
+            ByteBuffer wordBytes = channel.map(FileChannel.MapMode.READ_ONLY, position, wordByteCount);
+
+            return new FrozenModel(k, new String[vocabularySize], wordOffsets, wordBytes, stateTokens,
+                    successorStart, edgeTables[0], edgeTables[1], aliasCuts, edgeTables[2], weightTotals,
+                    startTables[0], startCuts, startTables[1], startTotal, distances);
+        }
+    }
+
+    /**
+     * Copies the state and successor tables into direct memory, outside the Java heap, so the garbage collector
+     * neither scans nor moves them, however large the model. Only the token text stays on the heap. Direct memory is
+     * limited by -XX:MaxDirectMemorySize, which defaults to the maximum heap size.
+     *
+     * @return the copy, or this model if its tables are already off the heap, as they are when it was loaded
+     */
+    public FrozenModel offHeap() {
+        if (stateTokens.isDirect()) {
+            return this;
+        }
+        String[] text = new String[vocabularySize()];
+        for (int id = 0; id < text.length; id++) {
+            text[id] = word(id);
+        }
+        return new FrozenModel(k, text, null, null, stateTokens.direct(), successorStart.direct(),
+                successorStates.direct(), successorWeights.direct(), aliasCuts.direct(), aliasIndexes.direct(),
+                weightTotals.direct(), startStates.direct(), startCuts.direct(), startAliases.direct(), startTotal,
+                distances.direct());
+    }
+
+    /**
+     * Writes the model to a snapshot file, replacing the file if it exists.
+     *
+     * @param path where to write the snapshot
+     * @throws IOException if writing fails
+     */
+    public void save(Path path) throws IOException {
+        int vocabularySize = vocabularySize();
+        byte[][] encoded = new byte[vocabularySize][];
+        int wordByteCount = 0;
+        for (int id = 0; id < vocabularySize; id++) {
+            encoded[id] = word(id).getBytes(StandardCharsets.UTF_8);
+            if (encoded[id].length > Integer.MAX_VALUE - wordByteCount) {
+                throw new IOException("The model's words take more than 2 GB, too many for a snapshot");
+            }
+            wordByteCount += encoded[id].length;
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer out = ByteBuffer.allocate(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            int[] header = { MAGIC, VERSION, k, vocabularySize, stateCount, (int) successorStates.size(),
+                    wordByteCount, (int) startStates.size() };
+            for (int value : header) {
+                out.putInt(value);
+            }
+            out.putLong(startTotal);
+            LongTable[] longTables = { weightTotals, aliasCuts, startCuts };
+            for (LongTable table : longTables) {
+                for (long i = 0; i < table.size(); i++) {
+                    if (out.remaining() < 8) {
+                        drain(channel, out);
+                    }
+                    out.putLong(table.get(i));
+                }
+            }
+            int offset = 0;
+            for (int id = 0; id < vocabularySize; id++) {
+                putInt(channel, out, offset);
+                offset += encoded[id].length;
+            }
+            putInt(channel, out, offset);
+            IntTable[] tables = { stateTokens, successorStart, successorStates, successorWeights, aliasIndexes,
+                    startStates, startAliases, distances };
+            for (IntTable table : tables) {
+                for (long i = 0; i < table.size(); i++) {
+                    putInt(channel, out, table.get(i));
+                }
+            }
+            for (byte[] word : encoded) {
+                if (out.remaining() < word.length) {
+                    drain(channel, out);
+                }
+                if (word.length > out.capacity()) {
+                    channel.write(ByteBuffer.wrap(word));
+                }
+                else {
+                    out.put(word);
+                }
+            }
+            drain(channel, out);
+        }
+    }
+
+    private static void putInt(FileChannel channel, ByteBuffer out, int value) throws IOException {
+        if (out.remaining() < 4) {
+            drain(channel, out);
+        }
+        out.putInt(value);
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer out) throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+
+    @Override
+    public int k() {
+        return k;
+    }
+
+    @Override
+    public int stateCount() {
+        return stateCount;
+    }
+
+    @Override
+    public int vocabularySize() {
+        return words.length;
+    }
+
+    @Override
+    public String word(int id) {
+        String word = words[id];
+        if (word == null) {
+            // Strings are immutable, so another thread decoding the same word at the same time is harmless
+            int start = wordOffsets.get(id);
+            int end = wordOffsets.get(id + 1);
+            byte[] bytes = new byte[end - start];
+            wordBytes.get(start, bytes);
+            word = new String(bytes, StandardCharsets.UTF_8);
+            words[id] = word;
+        }
+        return word;
+    }
+
+    @Override
+    public int token(int state, int index) {
+        return stateTokens.get((long) state * k + index);
+    }
+
+    @Override
+    public int successorCount(int state) {
+        return successorStart.get(state + 1) - successorStart.get(state);
+    }
+
+    @Override
+    public int successor(int state, int index) {
+        return successorStates.get(successorStart.get(state) + index);
+    }
+
+    @Override
+    public int successorWeight(int state, int index) {
+        return successorWeights.get(successorStart.get(state) + index);
+    }
+
+    @Override
+    public int sample(int state, RandomGenerator random) {
+        int start = successorStart.get(state);
+        int options = successorStart.get(state + 1) - start;
+        if (options == 1) {
+            return successorStates.get(start);
+        }
+        int column = start + random.nextInt(options);
+        if (random.nextLong(weightTotals.get(state)) < aliasCuts.get(column)) {
+            return successorStates.get(column);
+        }
+        return successorStates.get(aliasIndexes.get(column));
+    }
+
+    @Override
+    public int distanceToEnd(int state) {
+        return distances.get(state);
+    }
+
+    @Override
+    public int sampleStart(RandomGenerator random) {
+        int count = (int) startStates.size();
+        if (count == 0) {
+            return -1;
+        }
+        int column = random.nextInt(count);
+        if (random.nextLong(startTotal) < startCuts.get(column)) {
+            return startStates.get(column);
+        }
+        return startStates.get(startAliases.get(column));
+    }
+}
@@ -0,0 +1,164 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
+import java.util.stream.Stream;
+
+/**
+ * Generates passages from one frozen model. Unlike the static PassageGenerator, a Generator holds its own model, so
+ * a program can keep several of them, and it is immutable: any number of threads can share one and call generate at
+ * the same time with no locking. Each thread draws from its own random generator.
+ */
+public final class Generator {
+
+    private final FrozenModel model;
+
+    /**
+     * @param model the model to generate from
+     */
+    public Generator(FrozenModel model) {
+        if (model == null) {
+            throw new IllegalArgumentException("model is null");
+        }
+        this.model = model;
+    }
+
+    /**
+     * Makes a generator from a trained model. Later training of the model doesn't change the generator.
+     *
+     * @param model the trained model, which is copied
+     * @return the generator
+     */
+    public static Generator of(NGramModel model) {
+        return new Generator(model.freeze());
+    }
+
+    /**
+     * Makes a generator whose tables are kept off the heap, so a large model adds nothing to garbage collection
+     * pauses. See FrozenModel.offHeap.
+     *
+     * @param model the trained model, which is copied
+     * @return the generator
+     */
+    public static Generator offHeap(NGramModel model) {
+        return new Generator(model.offHeap());
+    }
+
+    /**
+     * Makes a generator from a model snapshot written by PassageGenerator.saveModel or FrozenModel.save.
+     *
+     * @param path the snapshot file
+     * @return the generator
+     * @throws IOException if the file can't be read or isn't a model snapshot
+     */
+    public static Generator load(Path path) throws IOException {
+        return new Generator(FrozenModel.load(path));
+    }
+
+    /**
+     * @return the model passages are generated from
+     */
+    public FrozenModel model() {
+        return model;
+    }
+
+    /**
+     * Generates a passage with the calling thread's random generator.
+     *
+     * @param size a requested minimum number of tokens. The passage finishes its last sentence, so it may be longer.
+     * @return the passage, or null if the model is empty
+     */
+    public String generate(int size) {
+        return generate(size, ThreadLocalRandom.current());
+    }
+
+    /**
+     * Generates a passage. The same seeded random generator always gives the same passage.
+     *
+     * @param size a requested minimum number of tokens. The passage finishes its last sentence, so it may be longer.
+     * @param random where the randomness comes from. It must not be used by another thread at the same time, so use
+     *            one per thread, or split a SplittableRandom.
+     * @return the passage, or null if the model is empty
+     */
+    public String generate(int size, RandomGenerator random) {
+        return PassageGenerator.generatePassage(model, size, random);
+    }
+
+    /**
+     * Generates many passages at once on the common fork-join pool. The same seed always gives the same passages, no
+     * matter how many threads the pool has.
+     *
+     * @param count how many passages to generate
+     * @param size a requested minimum number of tokens of each passage
+     * @param seed the master seed
+     * @return the passages in order, each null if the model is empty
+     */
+    public List<String> generate(int count, int size, long seed) {
+        return generate(count, size, seed, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Generates many passages at once on the given pool.
+     *
+     * @param count how many passages to generate
+     * @param size a requested minimum number of tokens of each passage
+     * @param seed the master seed
+     * @param pool the pool that does the work
+     * @return the passages in order, each null if the model is empty
+     */
+    public List<String> generate(int count, int size, long seed, ForkJoinPool pool) {
+        return PassageGenerator.generatePassages(model, count, size, seed, pool);
+    }
+
+    /**
+     * Generates a passage lazily, a token at a time.
+     *
+     * @param size a requested minimum number of tokens
+     * @param random where the randomness comes from. Only the iterator should use it while it is read.
+     * @return the tokens, none if the model is empty
+     */
+    public Iterator<String> tokens(int size, RandomGenerator random) {
+        return new PassageIterator(model, size, random);
+    }
+
+    /**
+     * Generates a passage lazily, as a stream of its tokens.
+     *
+     * @param size a requested minimum number of tokens
+     * @param random where the randomness comes from. Only the stream should use it while it is read.
+     * @return the tokens, none if the model is empty
+     */
+    public Stream<String> stream(int size, RandomGenerator random) {
+        return PassageGenerator.streamPassage(model, size, random);
+    }
+
+    /**
+     * Writes a passage as it is generated, with the calling thread's random generator. Memory use doesn't depend on
+     * the length of the passage.
+     *
+     * @param size a requested minimum number of tokens
+     * @param out where to write the passage. It is flushed, not closed.
+     * @return false if the model is empty, so nothing was written
+     * @throws IOException if writing fails
+     */
+    public boolean write(int size, Writer out) throws IOException {
+        return PassageGenerator.writePassage(model, size, ThreadLocalRandom.current(), out);
+    }
+
+    /**
+     * Writes a passage as it is generated.
+     *
+     * @param size a requested minimum number of tokens
+     * @param random where the randomness comes from
+     * @param out where to write the passage. It is flushed, not closed.
+     * @return false if the model is empty, so nothing was written
+     * @throws IOException if writing fails
+     */
+    public boolean write(int size, RandomGenerator random, Writer out) throws IOException {
+        return PassageGenerator.writePassage(model, size, random, out);
+    }
+}
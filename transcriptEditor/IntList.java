@@ -0,0 +1,77 @@
+import java.util.Arrays;
+
+/**
+ * A growable list of primitive ints, used wherever token or state ids are collected so they don't have to be boxed.
+ */
+public class IntList {
+
+    private int[] values;
+    private int size;
+
+    /**
+     * Creates an empty list.
+     */
+    public IntList() {
+        this(16);
+    }
+
+    /**
+     * Creates an empty list with room for some values.
+     *
+     * @param capacity how many values fit before the list has to grow
+     */
+    public IntList(int capacity) {
+        values = new int[Math.max(capacity, 1)];
+    }
+
+    /**
+     * Adds a value to the end of the list.
+     *
+     * @param value the value to add
+     */
+    public void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+    /**
+     * Gets a value.
+     *
+     * @param index the index of the value
+     * @return the value
+     */
+    public int get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+        return values[index];
+    }
+
+    /**
+     * @return the number of values in the list
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes values from the end of the list.
+     *
+     * @param size how many values to keep
+     */
+    public void truncate(int size) {
+        if (size < 0 || size > this.size) {
+            throw new IndexOutOfBoundsException("Size " + size + " out of bounds for length " + this.size);
+        }
+        this.size = size;
+    }
+
+    /**
+     * @return the values in a new array of exactly the right length
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+}
@@ -0,0 +1,110 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A read-only table of ints for FrozenModel, on the heap, in direct memory or memory-mapped from a file. A buffer can
+ * hold at most 2 GB, so the table is split over as many buffers of CHUNK_INTS ints as it needs, and indexes are longs.
+ */
+final class IntTable {
+
+    // ints per buffer, a power of two so an index splits into a buffer and an offset with a shift and a mask
+    private static final int CHUNK_SHIFT = 28;
+    private static final int CHUNK_INTS = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_INTS - 1;
+
+    private final IntBuffer[] chunks;
+    // chunks[0], looked up without splitting the index while it is small enough
+    private final IntBuffer first;
+    private final long size;
+
+    private IntTable(IntBuffer[] chunks, long size) {
+        this.chunks = chunks;
+        this.first = chunks[0];
+        this.size = size;
+    }
+
+    /**
+     * Wraps the start of an array, without copying it.
+     *
+     * @param values the array
+     * @param length how many of its ints make up the table
+     * @return the table
+     */
+    static IntTable wrap(int[] values, int length) {
+        IntBuffer[] chunks = new IntBuffer[chunkCount(length)];
+        for (int i = 0; i < chunks.length; i++) {
+            int start = i * CHUNK_INTS;
+            chunks[i] = IntBuffer.wrap(values, start, Math.min(length - start, CHUNK_INTS)).slice();
+        }
+        return new IntTable(chunks, length);
+    }
+
+    /**
+     * Maps a region of a file as a table of little-endian ints.
+     *
+     * @param channel the file
+     * @param position where the region starts, in bytes
+     * @param ints how many ints the region holds
+     * @return the table
+     * @throws IOException if the file ends before the region does, or mapping fails
+     */
+    static IntTable map(FileChannel channel, long position, long ints) throws IOException {
+        if (position + ints * 4 > channel.size()) {
+            throw new IOException("Model snapshot is truncated");
+        }
+        IntBuffer[] chunks = new IntBuffer[chunkCount(ints)];
+        for (int i = 0; i < chunks.length; i++) {
+            long length = Math.min(ints - (long) i * CHUNK_INTS, CHUNK_INTS);
+            chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, position + (long) i * CHUNK_INTS * 4, length * 4)
+                    .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        }
+        return new IntTable(chunks, ints);
+    }
+
+    /**
+     * Copies the table into direct buffers in the platform's byte order.
+     *
+     * @return the copy
+     */
+    IntTable direct() {
+        IntBuffer[] copies = new IntBuffer[chunkCount(size)];
+        for (int i = 0; i < copies.length; i++) {
+            int length = chunks[i].limit();
+            copies[i] = ByteBuffer.allocateDirect(length * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+            copies[i].put(0, chunks[i], 0, length);
+        }
+        return new IntTable(copies, size);
+    }
+
+    private static int chunkCount(long ints) {
+        return (int) Math.max((ints + CHUNK_INTS - 1) >>> CHUNK_SHIFT, 1);
+    }
+
+    /**
+     * @param index which int, from 0 to size - 1
+     * @return the int
+     */
+    int get(long index) {
+        if (index < CHUNK_INTS) {
+            return first.get((int) index);
+        }
+        return chunks[(int) (index >>> CHUNK_SHIFT)].get((int) (index & CHUNK_MASK));
+    }
+
+    /**
+     * @return how many ints the table holds
+     */
+    long size() {
+        return size;
+    }
+
+    /**
+     * @return true if the table is outside the Java heap, in direct memory or a mapped file
+     */
+    boolean isDirect() {
+        return first.isDirect();
+    }
+}
@@ -0,0 +1,102 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A read-only table of longs for FrozenModel, the same as IntTable but for the alias tables' weights: on the heap, in
+ * direct memory or memory-mapped from a file, split over as many buffers of CHUNK_LONGS longs as it needs.
+ */
+final class LongTable {
+
+    // longs per buffer, a power of two so an index splits into a buffer and an offset with a shift and a mask
+    private static final int CHUNK_SHIFT = 27;
+    private static final int CHUNK_LONGS = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_LONGS - 1;
+
+    private final LongBuffer[] chunks;
+    // chunks[0], looked up without splitting the index while it is small enough
+    private final LongBuffer first;
+    private final long size;
+
+    private LongTable(LongBuffer[] chunks, long size) {
+        this.chunks = chunks;
+        this.first = chunks[0];
+        this.size = size;
+    }
+
+    /**
+     * Wraps an array, without copying it.
+     *
+     * @param values the array
+     * @return the table
+     */
+    static LongTable wrap(long[] values) {
+        LongBuffer[] chunks = new LongBuffer[chunkCount(values.length)];
+        for (int i = 0; i < chunks.length; i++) {
+            int start = i * CHUNK_LONGS;
+            chunks[i] = LongBuffer.wrap(values, start, Math.min(values.length - start, CHUNK_LONGS)).slice();
+        }
+        return new LongTable(chunks, values.length);
+    }
+
+    /**
+     * Maps a region of a file as a table of little-endian longs.
+     *
+     * @param channel the file
+     * @param position where the region starts, in bytes
+     * @param longs how many longs the region holds
+     * @return the table
+     * @throws IOException if the file ends before the region does, or mapping fails
+     */
+    static LongTable map(FileChannel channel, long position, long longs) throws IOException {
+        if (position + longs * 8 > channel.size()) {
+            throw new IOException("Model snapshot is truncated");
+        }
+        LongBuffer[] chunks = new LongBuffer[chunkCount(longs)];
+        for (int i = 0; i < chunks.length; i++) {
+            long length = Math.min(longs - (long) i * CHUNK_LONGS, CHUNK_LONGS);
+            chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, position + (long) i * CHUNK_LONGS * 8, length * 8)
+                    .order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+        }
+        return new LongTable(chunks, longs);
+    }
+
+    /**
+     * Copies the table into direct buffers in the platform's byte order.
+     *
+     * @return the copy
+     */
+    LongTable direct() {
+        LongBuffer[] copies = new LongBuffer[chunks.length];
+        for (int i = 0; i < copies.length; i++) {
+            int length = chunks[i].limit();
+            copies[i] = ByteBuffer.allocateDirect(length * 8).order(ByteOrder.nativeOrder()).asLongBuffer();
+            copies[i].put(0, chunks[i], 0, length);
+        }
+        return new LongTable(copies, size);
+    }
+
+    private static int chunkCount(long longs) {
+        return (int) Math.max((longs + CHUNK_LONGS - 1) >>> CHUNK_SHIFT, 1);
+    }
+
+    /**
+     * @param index which long, from 0 to size - 1
+     * @return the long
+     */
+    long get(long index) {
+        if (index < CHUNK_LONGS) {
+            return first.get((int) index);
+        }
+        return chunks[(int) (index >>> CHUNK_SHIFT)].get((int) (index & CHUNK_MASK));
+    }
+
+    /**
+     * @return how many longs the table holds
+     */
+    long size() {
+        return size;
+    }
+}
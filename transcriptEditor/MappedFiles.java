@@ -0,0 +1,84 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Tokenizes UTF-8 text files read through memory-mapped buffers. The bytes are decoded in bulk straight from the
+ * mapping, so there is no per-word or per-line work and line breaks are kept exactly as they are in the file.
+ */
+public class MappedFiles {
+
+    /**
+     * How much of a file is mapped at a time when tokenizing.
+     */
+    private static final long WINDOW_SIZE = 64L * 1024 * 1024;
+
+    /**
+     * How many chars are decoded at a time when tokenizing.
+     */
+    private static final int CHAR_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Tokenizes a file of any size. The file is mapped a window at a time and decoded into a small reusable buffer
+     * that is handed to the tokenizer, so memory use does not depend on the size of the file.
+     *
+     * @param path the file to tokenize
+     * @param tokenizer the tokenizer to use. It is finished at the end of the file.
+     * @param sink receives the tokens
+     * @throws IOException if the file can't be read
+     */
+    public static void tokenize(Path path, Tokenizer tokenizer, Tokenizer.TokenSink sink) throws IOException {
+        CharsetDecoder decoder = newDecoder();
+        CharBuffer chars = CharBuffer.allocate(CHAR_BUFFER_SIZE);
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            do {
+                long windowSize = Math.min(WINDOW_SIZE, size - position);
+                boolean last = position + windowSize == size;
+                ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, position, windowSize);
+
+                CoderResult result;
+                do {
+                    result = decoder.decode(bytes, chars, last);
+                    drain(chars, tokenizer, sink);
+                } while (result.isOverflow());
+
+                if (last) {
+                    while (decoder.flush(chars).isOverflow()) {
+                        drain(chars, tokenizer, sink);
+                    }
+                    drain(chars, tokenizer, sink);
+                }
+                // a character split across windows is left in the buffer, so start the next window on it
+                position += bytes.position();
+            } while (position < size);
+        }
+        tokenizer.finish(sink);
+    }
+
+    /**
+     * Hands the decoded chars to the tokenizer and empties the buffer.
+     */
+    private static void drain(CharBuffer chars, Tokenizer tokenizer, Tokenizer.TokenSink sink) {
+        chars.flip();
+        tokenizer.feed(chars, sink);
+        chars.clear();
+    }
+
+    /**
+     * Makes a UTF-8 decoder that replaces bad input instead of failing.
+     */
+    private static CharsetDecoder newDecoder() {
+        return StandardCharsets.UTF_8.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+}
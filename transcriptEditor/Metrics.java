@@ -0,0 +1,264 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts where the time goes in each stage of the pipeline: how often each stage ran, for how long, and how many
+ * tokens and bytes it got through; the size and fan-out of the models trained; and how long passages took to
+ * generate. Every run of a stage is also a StageEvent for Java Flight Recorder.
+ *
+ * The counts are kept for the whole run in lock-free counters, so any number of threads can record at once, and
+ * writeJson dumps them. Times are summed over threads, so the rates are per busy thread-second.
+ */
+public final class Metrics {
+
+    /**
+     * The instrumented stages.
+     */
+    public enum Stage {
+        READ("read"),
+        CLEAN("clean"),
+        REMOVE_TIMES("removeTimes"),
+        TOKENIZE("tokenize"),
+        DEDUPLICATE("deduplicate"),
+        SEQUENCES("sequences"),
+        TRAIN("train"),
+        MERGE("merge"),
+        PRUNE("prune"),
+        GENERATE("generate");
+
+        private final String label;
+
+        Stage(String label) {
+            this.label = label;
+        }
+
+        /**
+         * @return the stage's name in events and in the JSON dump
+         */
+        public String label() {
+            return label;
+        }
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+    // generation latencies: bucket i counts passages that took less than 2^i microseconds, the last one the rest
+    private static final int LATENCY_BUCKETS = 32;
+
+    private static final LongAdder[] calls = adders();
+    private static final LongAdder[] nanos = adders();
+    private static final LongAdder[] tokens = adders();
+    private static final LongAdder[] bytes = adders();
+
+    private static final LongAdder models = new LongAdder();
+    private static final LongAdder states = new LongAdder();
+    private static final LongAdder statesWithSuccessors = new LongAdder();
+    private static final LongAdder transitions = new LongAdder();
+
+    private static final AtomicLongArray latencies = new AtomicLongArray(LATENCY_BUCKETS);
+    private static final LongAdder latencyTotal = new LongAdder();
+    private static final AtomicLong latencyMax = new AtomicLong();
+
+    private static volatile long startNanos = System.nanoTime();
+
+    private Metrics() {
+    }
+
+    private static LongAdder[] adders() {
+        LongAdder[] adders = new LongAdder[STAGES.length];
+        for (int i = 0; i < adders.length; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    /**
+     * Starts timing a run of a stage.
+     *
+     * @param stage the stage
+     * @return the event to pass to end when the stage is done
+     */
+    public static StageEvent begin(Stage stage) {
+        StageEvent event = new StageEvent();
+        event.stage = stage.label();
+        event.stageIndex = stage.ordinal();
+        event.startNanos = System.nanoTime();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Finishes timing a run of a stage, counts it, and commits its event if a recording wants it.
+     *
+     * @param event what begin returned
+     * @param tokenCount tokens read, learned or written
+     * @param byteCount bytes of a file or chars of a string read, 0 if the stage doesn't read any
+     * @return how long the stage took, in nanoseconds
+     */
+    public static long end(StageEvent event, long tokenCount, long byteCount) {
+        long elapsed = System.nanoTime() - event.startNanos;
+        int stage = event.stageIndex;
+        calls[stage].increment();
+        nanos[stage].add(elapsed);
+        tokens[stage].add(tokenCount);
+        bytes[stage].add(byteCount);
+        event.end();
+        if (event.shouldCommit()) {
+            event.tokens = tokenCount;
+            event.bytes = byteCount;
+            event.commit();
+        }
+        return elapsed;
+    }
+
+    /**
+     * Finishes timing the generation of a passage, like end, and adds its latency to the histogram.
+     *
+     * @param event what begin(Stage.GENERATE) returned
+     * @param tokenCount tokens in the passage
+     */
+    public static void endPassage(StageEvent event, long tokenCount) {
+        long micros = end(event, tokenCount, 0) / 1000;
+        int bucket = Math.min(64 - Long.numberOfLeadingZeros(micros), LATENCY_BUCKETS - 1);
+        latencies.incrementAndGet(bucket);
+        latencyTotal.add(micros);
+        latencyMax.accumulateAndGet(micros, Math::max);
+    }
+
+    /**
+     * Counts a trained model into the model totals. It takes a pass over the states.
+     *
+     * @param model the model
+     */
+    public static void recordModel(PassageModel model) {
+        long withSuccessors = 0;
+        long successors = 0;
+        for (int state = 0; state < model.stateCount(); state++) {
+            int count = model.successorCount(state);
+            if (count > 0) {
+                withSuccessors++;
+                successors += count;
+            }
+        }
+        models.increment();
+        states.add(model.stateCount());
+        statesWithSuccessors.add(withSuccessors);
+        transitions.add(successors);
+    }
+
+    /**
+     * Forgets everything counted so far.
+     */
+    public static void reset() {
+        for (int i = 0; i < STAGES.length; i++) {
+            calls[i].reset();
+            nanos[i].reset();
+            tokens[i].reset();
+            bytes[i].reset();
+        }
+        models.reset();
+        states.reset();
+        statesWithSuccessors.reset();
+        transitions.reset();
+        for (int i = 0; i < LATENCY_BUCKETS; i++) {
+            latencies.set(i, 0);
+        }
+        latencyTotal.reset();
+        latencyMax.set(0);
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * Writes the metrics as a JSON object: the stages that ran, with their calls, busy seconds, tokens and bytes and
+     * the rates per busy second; the model totals with the average number of successors of a state that has any; and
+     * the generation latencies in microseconds, with percentiles read from a histogram of power of two buckets, so
+     * each is the upper bound of its bucket, or the maximum if that is lower.
+     *
+     * @param out where to write. It is flushed, not closed.
+     * @throws IOException if writing fails
+     */
+    public static void writeJson(Writer out) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\n  \"seconds\": ").append(number((System.nanoTime() - startNanos) / 1e9));
+        sb.append(",\n  \"stages\": {");
+        String separator = "\n";
+        for (Stage stage : STAGES) {
+            int i = stage.ordinal();
+            long count = calls[i].sum();
+            if (count == 0) {
+                continue;
+            }
+            double seconds = nanos[i].sum() / 1e9;
+            long tokenCount = tokens[i].sum();
+            long byteCount = bytes[i].sum();
+            sb.append(separator).append("    \"").append(stage.label()).append("\": {\"calls\": ").append(count);
+            sb.append(", \"seconds\": ").append(number(seconds));
+            sb.append(", \"tokens\": ").append(tokenCount);
+            sb.append(", \"bytes\": ").append(byteCount);
+            sb.append(", \"tokensPerSecond\": ").append(number(rate(tokenCount, seconds)));
+            sb.append(", \"bytesPerSecond\": ").append(number(rate(byteCount, seconds))).append('}');
+            separator = ",\n";
+        }
+        sb.append("\n  },\n  \"models\": {\"count\": ").append(models.sum());
+        sb.append(", \"states\": ").append(states.sum());
+        sb.append(", \"transitions\": ").append(transitions.sum());
+        sb.append(", \"averageFanOut\": ").append(number(rate(transitions.sum(), statesWithSuccessors.sum())));
+        sb.append("},\n  \"generationMicros\": ");
+        appendLatencies(sb);
+        sb.append("\n}\n");
+        out.write(sb.toString());
+        out.flush();
+    }
+
+    private static void appendLatencies(StringBuilder sb) {
+        long[] counts = new long[LATENCY_BUCKETS];
+        long passages = 0;
+        int highest = 0;
+        for (int i = 0; i < LATENCY_BUCKETS; i++) {
+            counts[i] = latencies.get(i);
+            passages += counts[i];
+            if (counts[i] > 0) {
+                highest = i;
+            }
+        }
+        sb.append("{\"count\": ").append(passages);
+        sb.append(", \"mean\": ").append(number(rate(latencyTotal.sum(), passages)));
+        long max = latencyMax.get();
+        sb.append(", \"p50\": ").append(Math.min(percentile(counts, passages, 0.5), max));
+        sb.append(", \"p90\": ").append(Math.min(percentile(counts, passages, 0.9), max));
+        sb.append(", \"p99\": ").append(Math.min(percentile(counts, passages, 0.99), max));
+        sb.append(", \"max\": ").append(max);
+        sb.append(",\n    \"histogram\": [");
+        for (int i = 0; passages > 0 && i <= highest; i++) {
+            sb.append(i == 0 ? "" : ", ").append("{\"below\": ").append(1L << i);
+            sb.append(", \"count\": ").append(counts[i]).append('}');
+        }
+        sb.append("]}");
+    }
+
+    /**
+     * @return the upper bound of the bucket holding the given fraction of the passages, 0 if there are none
+     */
+    private static long percentile(long[] counts, long total, double fraction) {
+        long rank = (long) Math.ceil(total * fraction);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank && seen > 0) {
+                return 1L << i;
+            }
+        }
+        return 0;
+    }
+
+    private static double rate(long amount, double per) {
+        return per > 0 ? amount / per : 0;
+    }
+
+    private static String number(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+}
@@ -0,0 +1,887 @@
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+/**
+ * The passage generator's model. A state is a sequence of k token ids, and each state keeps the states that followed
+ * it in the training text. States are numbered in the order they are first seen and stored packed, k ids per state, in
+ * one int array. Token text only comes back out through {@link #word(int)}. This is the model used for training;
+ * {@link #freeze} makes a read-only copy that can be saved.
+ *
+ * Each distinct transition is stored once with a count of how often it was seen. Before sampling, the transitions are
+ * laid out per state with an alias table, so {@link #sample} picks a successor in constant time with probability
+ * proportional to its count.
+ */
+public class NGramModel implements PassageModel {
+
+    // how many distinct transition counts enforceMemoryBudget tells apart when it picks how much to prune
+    private static final int HISTOGRAM_SIZE = 1 << 12;
+
+    private final int k;
+    private final Vocabulary vocabulary = new Vocabulary();
+
+    // the token ids of state s are stateTokens[s * k] to stateTokens[s * k + k - 1]
+    private int[] stateTokens;
+    private int stateCount;
+    // open addressing hash table holding state + 1 in each used slot, 0 in empty ones
+    private int[] stateTable = new int[256];
+
+    // distinct transition e goes from edgeFrom[e] to edgeTo[e] and was seen edgeCounts[e] times
+    private int[] edgeFrom = new int[64];
+    private int[] edgeTo = new int[64];
+    private int[] edgeCounts = new int[64];
+    private int edgeCount;
+    // open addressing hash table holding e + 1 in each used slot, 0 in empty ones
+    private int[] edgeTable = new int[128];
+
+    // the sampling tables, brought up to date from the edges whenever a transition was added since the last build.
+    // the successors of s are at successorStart[s] to successorStart[s + 1] - 1 in the other arrays.
+    private int[] successorStart;
+    private int[] successorStates;
+    private int[] successorWeights;
+    // alias table: a column is kept if a draw below weightTotals[s] is below its cut, otherwise aliasIndexes is used
+    private long[] aliasCuts;
+    private int[] aliasIndexes;
+    private long[] weightTotals;
+    // the states a passage can start at, whose first token starts with an uppercase letter, with an alias table
+    // weighted by how often each state was followed by another
+    private int[] startStates;
+    private long[] startCuts;
+    private int[] startAliases;
+    private long startTotal;
+    // how many steps each state is from the nearest state ending a sentence, -1 if none can be reached
+    private int[] distances;
+    private boolean samplersCurrent;
+    // true while no state or distinct transition was added since the last build, so the tables keep their layout and
+    // only the states whose counts went up, marked in touched and listed in touchedStates, need new alias tables
+    private boolean layoutCurrent;
+    private boolean[] touched;
+    private IntList touchedStates;
+
+    // the most bytes the model may take, 0 for no limit, and what pruning dropped to stay within it
+    private long memoryBudget;
+    private long droppedStates;
+    private long droppedTransitions;
+    private long droppedWeight;
+    private boolean overBudget;
+
+    /**
+     * Creates an empty model.
+     *
+     * @param k how many tokens make up a state
+     */
+    public NGramModel(int k) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive, was " + k);
+        }
+        this.k = k;
+        stateTokens = new int[64 * k];
+    }
+
+    @Override
+    public int k() {
+        return k;
+    }
+
+    /**
+     * @return the dictionary of token ids
+     */
+    public Vocabulary vocabulary() {
+        return vocabulary;
+    }
+
+    @Override
+    public int stateCount() {
+        return stateCount;
+    }
+
+    @Override
+    public int vocabularySize() {
+        return vocabulary.size();
+    }
+
+    @Override
+    public String word(int id) {
+        return vocabulary.word(id);
+    }
+
+    /**
+     * Gets the id of the state made of tokens[offset] to tokens[offset + k - 1], adding it if it is new.
+     *
+     * @param tokens token ids
+     * @param offset where the state starts
+     * @return the state's id
+     */
+    public int state(int[] tokens, int offset) {
+        int mask = stateTable.length - 1;
+        for (int slot = hash(tokens, offset) & mask;; slot = (slot + 1) & mask) {
+            int entry = stateTable[slot];
+            if (entry == 0) {
+                return addState(tokens, offset, slot);
+            }
+            if (sameTokens(entry - 1, tokens, offset)) {
+                return entry - 1;
+            }
+        }
+    }
+
+    /**
+     * Records that one state followed another.
+     *
+     * @param from the earlier state
+     * @param to the state that followed it
+     */
+    public void addTransition(int from, int to) {
+        addTransitions(from, to, 1);
+    }
+
+    /**
+     * Records that one state followed another some number of times.
+     *
+     * @param from the earlier state
+     * @param to the state that followed it
+     * @param count how many times
+     */
+    public void addTransitions(int from, int to, int count) {
+        samplersCurrent = false;
+        int mask = edgeTable.length - 1;
+        for (int slot = edgeHash(from, to) & mask;; slot = (slot + 1) & mask) {
+            int entry = edgeTable[slot];
+            if (entry == 0) {
+                layoutCurrent = false;
+                addEdge(from, to, count, slot);
+                return;
+            }
+            if (edgeFrom[entry - 1] == from && edgeTo[entry - 1] == to) {
+                edgeCounts[entry - 1] += count;
+                if (layoutCurrent && !touched[from]) {
+                    touched[from] = true;
+                    touchedStates.add(from);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Adds everything another model learned to this one. Tokens, states and transitions that are new to this model are
+     * numbered in the order the other model first saw them, so merging the models of several texts in order gives
+     * exactly the model that training on those texts in order would. What pruning dropped from the other model is
+     * added to this model's totals, but its overBudget isn't: the other model may have had a smaller budget, so only
+     * enforceMemoryBudget on this model says whether this model's budget can be met.
+     *
+     * @param other a model with the same k
+     */
+    public void merge(NGramModel other) {
+        if (other.k != k) {
+            throw new IllegalArgumentException("Can't merge a model with k=" + other.k + " into one with k=" + k);
+        }
+        StageEvent event = Metrics.begin(Metrics.Stage.MERGE);
+        int[] tokenIds = new int[other.vocabulary.size()];
+        for (int id = 0; id < tokenIds.length; id++) {
+            tokenIds[id] = vocabulary.id(other.vocabulary.word(id));
+        }
+        int[] stateIds = new int[other.stateCount];
+        int[] tokens = new int[k];
+        for (int state = 0; state < stateIds.length; state++) {
+            for (int i = 0; i < k; i++) {
+                tokens[i] = tokenIds[other.stateTokens[state * k + i]];
+            }
+            stateIds[state] = state(tokens, 0);
+        }
+        for (int e = 0; e < other.edgeCount; e++) {
+            addTransitions(stateIds[other.edgeFrom[e]], stateIds[other.edgeTo[e]], other.edgeCounts[e]);
+        }
+        droppedStates += other.droppedStates;
+        droppedTransitions += other.droppedTransitions;
+        droppedWeight += other.droppedWeight;
+        Metrics.end(event, other.edgeCount, 0);
+    }
+
+    /**
+     * @return the number of distinct transitions
+     */
+    public int transitionCount() {
+        return edgeCount;
+    }
+
+    /**
+     * @return roughly how many bytes the model takes on the heap, including the sampling tables if they are built
+     */
+    public long memoryBytes() {
+        long ints = stateTokens.length + stateTable.length + edgeFrom.length * 3L + edgeTable.length;
+        if (successorStart != null) {
+            // the cuts and totals are longs, two ints each, and touched takes a byte per state
+            ints += successorStart.length + successorStates.length * 5L + weightTotals.length * 2L
+                    + startStates.length * 4L + distances.length + touched.length / 4;
+        }
+        return ints * 4 + vocabulary.memoryBytes();
+    }
+
+    /**
+     * Sets how many bytes the model may take, as measured by memoryBytes. Training doesn't check the budget by itself;
+     * enforceMemoryBudget does.
+     *
+     * @param bytes the budget, 0 for no limit
+     */
+    public void setMemoryBudget(long bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("The memory budget can't be negative, was " + bytes);
+        }
+        memoryBudget = bytes;
+    }
+
+    /**
+     * @return how many bytes the model may take, 0 for no limit
+     */
+    public long memoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Makes the model fit its memory budget if it has outgrown it. The sampling tables are dropped first, to be
+     * rebuilt when needed. Then the rarest transitions are pruned, those seen fewer than some minCount times, until
+     * the states and transitions take at most three quarters of what the vocabulary leaves of the budget, so the next
+     * few texts fit without pruning again. The minCount is read off a histogram of the transition counts, so the model
+     * is pruned once rather than once for every count up to it.
+     *
+     * The vocabulary is never pruned. If it takes the whole budget by itself, pruning can't meet the budget, so the
+     * model is left as it is and overBudget reports it, rather than every transition being dropped.
+     *
+     * @return true if anything was pruned
+     */
+    public boolean enforceMemoryBudget() {
+        if (memoryBudget == 0 || memoryBytes() <= memoryBudget) {
+            return false;
+        }
+        long vocabularyBytes = vocabulary.memoryBytes();
+        if (vocabularyBytes >= memoryBudget) {
+            overBudget = true;
+            return false;
+        }
+        StageEvent event = Metrics.begin(Metrics.Stage.PRUNE);
+        long dropped = droppedTransitions;
+        dropSamplers();
+        long target = (memoryBudget - vocabularyBytes) / 4 * 3;
+        boolean pruned = false;
+        int minCount = 1;
+        while (edgeCount > 0 && memoryBytes() - vocabularyBytes > target) {
+            minCount = minCountFor(target, minCount + 1);
+            prune(minCount);
+            pruned = true;
+        }
+        Metrics.end(event, droppedTransitions - dropped, 0);
+        return pruned;
+    }
+
+    /**
+     * Finds the smallest minCount, at least the given one, for which prune leaves states and transitions that take at
+     * most the given number of bytes. A transition is kept if its count is at least minCount, and a state if the
+     * largest count of the transitions from or to it is, so histograms of both tell exactly how many of each prune
+     * keeps, and so how large the tables it leaves are. The histograms cover HISTOGRAM_SIZE counts from least on; if
+     * pruning all of those isn't enough, the largest of them is returned and the caller has to look again.
+     *
+     * @param bytes how many bytes the states and transitions may take
+     * @param least the smallest minCount to consider, at least 2
+     * @return the minCount
+     */
+    private int minCountFor(long bytes, int least) {
+        // bucket 0 holds the counts below least, bucket i the count least + i - 1, the last bucket everything above
+        long[] edges = new long[HISTOGRAM_SIZE + 1];
+        int[] stateBuckets = new int[stateCount];
+        for (int e = 0; e < edgeCount; e++) {
+            int count = edgeCounts[e];
+            int bucket = count < least ? 0 : (int) Math.min((long) count - least + 1, HISTOGRAM_SIZE);
+            edges[bucket]++;
+            stateBuckets[edgeFrom[e]] = Math.max(stateBuckets[edgeFrom[e]], bucket);
+            stateBuckets[edgeTo[e]] = Math.max(stateBuckets[edgeTo[e]], bucket);
+        }
+        long[] states = new long[HISTOGRAM_SIZE + 1];
+        for (int state = 0; state < stateCount; state++) {
+            states[stateBuckets[state]]++;
+        }
+        long keptEdges = edgeCount;
+        long keptStates = stateCount;
+        for (int i = 0; i < HISTOGRAM_SIZE; i++) {
+            // minCount least + i keeps buckets i + 1 and up
+            keptEdges -= edges[i];
+            keptStates -= states[i];
+            if (prunedBytes((int) keptStates, (int) keptEdges) <= bytes) {
+                return least + i;
+            }
+        }
+        return least + HISTOGRAM_SIZE - 1;
+    }
+
+    /**
+     * @return how many bytes the state and transition tables take after prune keeps the given numbers of each
+     */
+    private long prunedBytes(int states, int edges) {
+        return 4L * ((long) Math.max(states, 64) * k + tableCapacity(states, 256) + Math.max(edges, 64) * 3L
+                + tableCapacity(edges, 128));
+    }
+
+    /**
+     * Drops every transition seen fewer than minCount times, and then every state that no remaining transition comes
+     * from or goes to. The remaining states keep their order but are numbered again from 0. What is dropped is added
+     * to the totals reported by droppedStates, droppedTransitions and droppedWeight.
+     *
+     * @param minCount the fewest times a transition must have been seen to be kept
+     */
+    public void prune(int minCount) {
+        dropSamplers();
+        boolean[] used = new boolean[stateCount];
+        int kept = 0;
+        for (int e = 0; e < edgeCount; e++) {
+            int from = edgeFrom[e];
+            int to = edgeTo[e];
+            int count = edgeCounts[e];
+            if (count >= minCount) {
+                edgeFrom[kept] = from;
+                edgeTo[kept] = to;
+                edgeCounts[kept] = count;
+                used[from] = true;
+                used[to] = true;
+                kept++;
+            }
+            else {
+                droppedTransitions++;
+                droppedWeight += count;
+            }
+        }
+        edgeCount = kept;
+
+        int[] newIds = new int[stateCount];
+        int states = 0;
+        for (int state = 0; state < stateCount; state++) {
+            if (used[state]) {
+                System.arraycopy(stateTokens, state * k, stateTokens, states * k, k);
+                newIds[state] = states++;
+            }
+        }
+        droppedStates += stateCount - states;
+        stateCount = states;
+        for (int e = 0; e < edgeCount; e++) {
+            edgeFrom[e] = newIds[edgeFrom[e]];
+            edgeTo[e] = newIds[edgeTo[e]];
+        }
+
+        // give the freed memory back
+        stateTokens = Arrays.copyOf(stateTokens, Math.max(stateCount, 64) * k);
+        rehash(tableCapacity(stateCount, 256));
+        int capacity = Math.max(edgeCount, 64);
+        edgeFrom = Arrays.copyOf(edgeFrom, capacity);
+        edgeTo = Arrays.copyOf(edgeTo, capacity);
+        edgeCounts = Arrays.copyOf(edgeCounts, capacity);
+        rehashEdges(tableCapacity(edgeCount, 128));
+    }
+
+    /**
+     * @return the number of states pruning dropped
+     */
+    public long droppedStates() {
+        return droppedStates;
+    }
+
+    /**
+     * @return the number of distinct transitions pruning dropped
+     */
+    public long droppedTransitions() {
+        return droppedTransitions;
+    }
+
+    /**
+     * @return how many times the transitions pruning dropped had been seen, all together
+     */
+    public long droppedWeight() {
+        return droppedWeight;
+    }
+
+    /**
+     * @return true if the vocabulary alone has taken more than the memory budget, so the budget couldn't be met
+     */
+    public boolean overBudget() {
+        return overBudget;
+    }
+
+    /**
+     * Forgets the sampling tables, which are rebuilt the next time they are needed.
+     */
+    private void dropSamplers() {
+        samplersCurrent = false;
+        layoutCurrent = false;
+        touched = null;
+        touchedStates = null;
+        successorStart = null;
+        successorStates = null;
+        successorWeights = null;
+        aliasCuts = null;
+        aliasIndexes = null;
+        weightTotals = null;
+        startStates = null;
+        startCuts = null;
+        startAliases = null;
+        distances = null;
+    }
+
+    /**
+     * @return the smallest power of two table size, at least min, that holds count entries at most half full
+     */
+    private static int tableCapacity(int count, int min) {
+        int capacity = min;
+        while (capacity < count * 2 + 2) {
+            capacity *= 2;
+        }
+        return capacity;
+    }
+
+    @Override
+    public int successorCount(int state) {
+        buildSamplers();
+        return successorStart[state + 1] - successorStart[state];
+    }
+
+    @Override
+    public int successor(int state, int index) {
+        buildSamplers();
+        return successorStates[successorStart[state] + index];
+    }
+
+    @Override
+    public int successorWeight(int state, int index) {
+        buildSamplers();
+        return successorWeights[successorStart[state] + index];
+    }
+
+    /**
+     * Picks a random successor of a state in constant time, no matter how many successors there are.
+     */
+    @Override
+    public int sample(int state, RandomGenerator random) {
+        buildSamplers();
+        int start = successorStart[state];
+        int options = successorStart[state + 1] - start;
+        if (options == 1) {
+            return successorStates[start];
+        }
+        int column = start + random.nextInt(options);
+        if (random.nextLong(weightTotals[state]) < aliasCuts[column]) {
+            return successorStates[column];
+        }
+        return successorStates[aliasIndexes[column]];
+    }
+
+    /**
+     * Lays the transitions out by state and builds the alias tables, unless nothing changed since the last build. If a
+     * state or a distinct transition was added since, every table is built again, which takes time in proportion to
+     * the whole model, however little was added. If only known transitions were seen again, just the alias tables of
+     * the states they come from and the sentence-start table are.
+     */
+    public void buildSamplers() {
+        if (samplersCurrent) {
+            return;
+        }
+        if (layoutCurrent) {
+            updateSamplers();
+            samplersCurrent = true;
+            return;
+        }
+        // counting sort of the edges by their from state, keeping first-seen order within a state
+        int[] start = new int[stateCount + 1];
+        for (int e = 0; e < edgeCount; e++) {
+            start[edgeFrom[e] + 1]++;
+        }
+        int widest = 0;
+        for (int state = 0; state < stateCount; state++) {
+            widest = Math.max(widest, start[state + 1]);
+            start[state + 1] += start[state];
+        }
+        int[] states = new int[edgeCount];
+        int[] weights = new int[edgeCount];
+        int[] next = Arrays.copyOf(start, stateCount);
+        for (int e = 0; e < edgeCount; e++) {
+            int position = next[edgeFrom[e]]++;
+            states[position] = edgeTo[e];
+            weights[position] = edgeCounts[e];
+        }
+
+        long[] cuts = new long[edgeCount];
+        int[] aliases = new int[edgeCount];
+        long[] totals = new long[stateCount];
+        long[] scaled = new long[widest];
+        int[] small = new int[widest];
+        int[] large = new int[widest];
+        for (int state = 0; state < stateCount; state++) {
+            totals[state] = buildAlias(start[state], start[state + 1], weights, cuts, aliases, scaled, small, large);
+        }
+
+        successorStart = start;
+        successorStates = states;
+        successorWeights = weights;
+        aliasCuts = cuts;
+        aliasIndexes = aliases;
+        weightTotals = totals;
+        buildStarts();
+        distances = buildDistances();
+        touched = new boolean[stateCount];
+        touchedStates = new IntList();
+        layoutCurrent = true;
+        samplersCurrent = true;
+    }
+
+    /**
+     * Brings the sampling tables up to date when only the counts of known transitions went up: the successor weights
+     * and alias table of each touched state, and the sentence-start alias table, which is weighted by the states'
+     * totals. Which states start sentences and how far each is from a sentence end only depend on which transitions
+     * there are, so those stay.
+     */
+    private void updateSamplers() {
+        int widest = 0;
+        for (int i = 0; i < touchedStates.size(); i++) {
+            int state = touchedStates.get(i);
+            widest = Math.max(widest, successorStart[state + 1] - successorStart[state]);
+        }
+        long[] scaled = new long[widest];
+        int[] small = new int[widest];
+        int[] large = new int[widest];
+        for (int i = 0; i < touchedStates.size(); i++) {
+            int state = touchedStates.get(i);
+            for (int p = successorStart[state]; p < successorStart[state + 1]; p++) {
+                successorWeights[p] = edgeCounts[edge(state, successorStates[p])];
+            }
+            weightTotals[state] = buildAlias(successorStart[state], successorStart[state + 1], successorWeights,
+                    aliasCuts, aliasIndexes, scaled, small, large);
+            touched[state] = false;
+        }
+        touchedStates = new IntList();
+        buildStartAlias();
+    }
+
+    /**
+     * Builds the index of sentence-start states and its alias table. A state that was never followed by another can't
+     * start a passage.
+     */
+    private void buildStarts() {
+        boolean[] upperCase = new boolean[vocabulary.size()];
+        for (int id = 0; id < upperCase.length; id++) {
+            upperCase[id] = Character.isUpperCase(vocabulary.word(id).charAt(0));
+        }
+        IntList starts = new IntList();
+        for (int state = 0; state < stateCount; state++) {
+            if (weightTotals[state] > 0 && upperCase[stateTokens[state * k]]) {
+                starts.add(state);
+            }
+        }
+        startStates = starts.toArray();
+        startCuts = new long[startStates.length];
+        startAliases = new int[startStates.length];
+        buildStartAlias();
+    }
+
+    /**
+     * Builds the alias table of the sentence-start states, weighted by how often each was followed by another.
+     */
+    private void buildStartAlias() {
+        int count = startStates.length;
+        long[] weights = new long[count];
+        for (int i = 0; i < count; i++) {
+            weights[i] = weightTotals[startStates[i]];
+        }
+        startTotal = buildAlias(0, count, weights, startCuts, startAliases, new int[count], new int[count]);
+    }
+
+    /**
+     * Finds every state's distance to the nearest sentence end, breadth first from the sentence ends along the
+     * transitions in reverse.
+     *
+     * @return the distance of each state, -1 where no sentence end can be reached
+     */
+    private int[] buildDistances() {
+        boolean[] ends = new boolean[vocabulary.size()];
+        for (int id = 0; id < ends.length; id++) {
+            String word = vocabulary.word(id);
+            ends[id] = word.equals(".") || word.equals("?") || word.equals("!");
+        }
+        // the transitions grouped by the state they go to
+        int[] predecessorStart = new int[stateCount + 1];
+        for (int e = 0; e < edgeCount; e++) {
+            predecessorStart[edgeTo[e] + 1]++;
+        }
+        for (int state = 0; state < stateCount; state++) {
+            predecessorStart[state + 1] += predecessorStart[state];
+        }
+        int[] predecessors = new int[edgeCount];
+        int[] next = Arrays.copyOf(predecessorStart, stateCount);
+        for (int e = 0; e < edgeCount; e++) {
+            predecessors[next[edgeTo[e]]++] = edgeFrom[e];
+        }
+
+        int[] result = new int[stateCount];
+        Arrays.fill(result, -1);
+        int[] queue = new int[stateCount];
+        int head = 0;
+        int tail = 0;
+        for (int state = 0; state < stateCount; state++) {
+            if (ends[stateTokens[state * k + k - 1]]) {
+                result[state] = 0;
+                queue[tail++] = state;
+            }
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            for (int p = predecessorStart[state]; p < predecessorStart[state + 1]; p++) {
+                if (result[predecessors[p]] < 0) {
+                    result[predecessors[p]] = result[state] + 1;
+                    queue[tail++] = predecessors[p];
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public int distanceToEnd(int state) {
+        buildSamplers();
+        return distances[state];
+    }
+
+    /**
+     * Picks a sentence-start state in constant time.
+     */
+    @Override
+    public int sampleStart(RandomGenerator random) {
+        buildSamplers();
+        if (startStates.length == 0) {
+            return -1;
+        }
+        int column = random.nextInt(startStates.length);
+        if (random.nextLong(startTotal) < startCuts[column]) {
+            return startStates[column];
+        }
+        return startStates[startAliases[column]];
+    }
+
+    /**
+     * Builds the alias table for the successors in [from, to).
+     *
+     * @return the total weight
+     */
+    private static long buildAlias(int from, int to, int[] weights, long[] cuts, int[] aliases, long[] scaled,
+            int[] small, int[] large) {
+        for (int i = from; i < to; i++) {
+            scaled[i - from] = weights[i];
+        }
+        return buildAlias(from, to, scaled, cuts, aliases, small, large);
+    }
+
+    /**
+     * Builds an alias table over the columns [from, to) with Vose's method, in integers so the probabilities are
+     * exact. Every weight is scaled by the number of columns, so each column holds exactly the total weight; totals
+     * and cuts are longs, so the weights can add up to far more than an int holds.
+     *
+     * @param scaled the weights of the columns from index 0 on. They are scaled in place.
+     * @return the total weight
+     */
+    private static long buildAlias(int from, int to, long[] scaled, long[] cuts, int[] aliases, int[] small,
+            int[] large) {
+        int columns = to - from;
+        long total = 0;
+        for (int i = 0; i < columns; i++) {
+            total += scaled[i];
+        }
+        int smallCount = 0;
+        int largeCount = 0;
+        for (int i = 0; i < columns; i++) {
+            scaled[i] = Math.multiplyExact(scaled[i], (long) columns);
+            if (scaled[i] < total) {
+                small[smallCount++] = i;
+            }
+            else {
+                large[largeCount++] = i;
+            }
+        }
+        while (smallCount > 0 && largeCount > 0) {
+            int less = small[--smallCount];
+            int more = large[largeCount - 1];
+            cuts[from + less] = scaled[less];
+            aliases[from + less] = from + more;
+            scaled[more] -= total - scaled[less];
+            if (scaled[more] < total) {
+                largeCount--;
+                small[smallCount++] = more;
+            }
+        }
+        // whatever is left fills its whole column
+        while (largeCount > 0) {
+            int full = large[--largeCount];
+            cuts[from + full] = total;
+            aliases[from + full] = from + full;
+        }
+        while (smallCount > 0) {
+            int full = small[--smallCount];
+            cuts[from + full] = total;
+            aliases[from + full] = from + full;
+        }
+        return total;
+    }
+
+    @Override
+    public int token(int state, int index) {
+        return stateTokens[state * k + index];
+    }
+
+    /**
+     * Freezes a copy of the model for generation and saving. Later training doesn't change the copy.
+     *
+     * @return the frozen copy
+     */
+    public FrozenModel freeze() {
+        buildSamplers();
+        return new FrozenModel(k, words(), Arrays.copyOf(stateTokens, stateCount * k), successorStart.clone(),
+                successorStates.clone(), successorWeights.clone(), aliasCuts.clone(), aliasIndexes.clone(),
+                weightTotals.clone(), startStates.clone(), startCuts.clone(), startAliases.clone(), startTotal,
+                distances.clone());
+    }
+
+    /**
+     * Copies the model for generation into direct memory, like freeze().offHeap(), but straight from this model's
+     * tables, so there is no frozen heap copy in between: while it runs, the model and its off-heap copy are the only
+     * copies. Later training doesn't change the copy.
+     *
+     * @return the off-heap copy
+     */
+    public FrozenModel offHeap() {
+        buildSamplers();
+        // a frozen view of the live tables, only read while offHeap copies it
+        return new FrozenModel(k, words(), stateTokens, successorStart, successorStates, successorWeights, aliasCuts,
+                aliasIndexes, weightTotals, startStates, startCuts, startAliases, startTotal, distances).offHeap();
+    }
+
+    private String[] words() {
+        String[] words = new String[vocabulary.size()];
+        for (int id = 0; id < words.length; id++) {
+            words[id] = vocabulary.word(id);
+        }
+        return words;
+    }
+
+    /**
+     * Makes a trainable copy of any model, such as one loaded from a snapshot. Token and state ids stay the same.
+     *
+     * @param source the model to copy
+     * @return a new model with the same tokens, states and transition counts
+     */
+    public static NGramModel copyOf(PassageModel source) {
+        NGramModel copy = new NGramModel(source.k());
+        for (int id = 0; id < source.vocabularySize(); id++) {
+            copy.vocabulary.id(source.word(id));
+        }
+        int[] tokens = new int[source.k()];
+        for (int state = 0; state < source.stateCount(); state++) {
+            for (int i = 0; i < tokens.length; i++) {
+                tokens[i] = source.token(state, i);
+            }
+            copy.state(tokens, 0);
+        }
+        for (int state = 0; state < source.stateCount(); state++) {
+            for (int i = 0; i < source.successorCount(state); i++) {
+                copy.addTransitions(state, source.successor(state, i), source.successorWeight(state, i));
+            }
+        }
+        return copy;
+    }
+
+    private int addState(int[] tokens, int offset, int slot) {
+        samplersCurrent = false;
+        layoutCurrent = false;
+        if ((stateCount + 1) * k > stateTokens.length) {
+            stateTokens = Arrays.copyOf(stateTokens, stateTokens.length * 2);
+        }
+        int state = stateCount++;
+        System.arraycopy(tokens, offset, stateTokens, state * k, k);
+        stateTable[slot] = state + 1;
+        if (stateCount * 2 > stateTable.length) {
+            rehash(stateTable.length * 2);
+        }
+        return state;
+    }
+
+    private void addEdge(int from, int to, int count, int slot) {
+        if (edgeCount == edgeFrom.length) {
+            int capacity = edgeCount * 2;
+            edgeFrom = Arrays.copyOf(edgeFrom, capacity);
+            edgeTo = Arrays.copyOf(edgeTo, capacity);
+            edgeCounts = Arrays.copyOf(edgeCounts, capacity);
+        }
+        int edge = edgeCount++;
+        edgeFrom[edge] = from;
+        edgeTo[edge] = to;
+        edgeCounts[edge] = count;
+        edgeTable[slot] = edge + 1;
+        if (edgeCount * 2 > edgeTable.length) {
+            rehashEdges(edgeTable.length * 2);
+        }
+    }
+
+    /**
+     * @return the index of the transition from one state to another, which must have been seen
+     */
+    private int edge(int from, int to) {
+        int mask = edgeTable.length - 1;
+        int slot = edgeHash(from, to) & mask;
+        int entry = edgeTable[slot];
+        while (edgeFrom[entry - 1] != from || edgeTo[entry - 1] != to) {
+            slot = (slot + 1) & mask;
+            entry = edgeTable[slot];
+        }
+        return entry - 1;
+    }
+
+    private void rehashEdges(int capacity) {
+        edgeTable = new int[capacity];
+        int mask = capacity - 1;
+        for (int e = 0; e < edgeCount; e++) {
+            int free = edgeHash(edgeFrom[e], edgeTo[e]) & mask;
+            while (edgeTable[free] != 0) {
+                free = (free + 1) & mask;
+            }
+            edgeTable[free] = e + 1;
+        }
+    }
+
+    private void rehash(int capacity) {
+        stateTable = new int[capacity];
+        int mask = capacity - 1;
+        for (int state = 0; state < stateCount; state++) {
+            int slot = hash(stateTokens, state * k) & mask;
+            while (stateTable[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            stateTable[slot] = state + 1;
+        }
+    }
+
+    private int hash(int[] tokens, int offset) {
+        int h = 1;
+        for (int i = 0; i < k; i++) {
+            h = h * 0x9E3779B1 + tokens[offset + i];
+        }
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        return h ^ (h >>> 13);
+    }
+
+    private static int edgeHash(int from, int to) {
+        long h = ((long) from << 32 | (to & 0xFFFFFFFFL)) * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private boolean sameTokens(int state, int[] tokens, int offset) {
+        int base = state * k;
+        for (int i = 0; i < k; i++) {
+            if (stateTokens[base + i] != tokens[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
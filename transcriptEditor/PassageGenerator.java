@@ -1,18 +1,25 @@
-import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.Random;
 import java.util.Scanner;
-import java.util.Set;
-import java.util.TreeMap;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.SplittableRandom;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 
 
@@ -24,40 +31,101 @@ import java.util.regex.Pattern;
  */
 public class PassageGenerator {
     
-    private static Map<String, List<String>> model;
+    private static NGramModel model;
+    
+    // a model loaded from a snapshot, used for generation until more training is done
+    private static PassageModel loadedModel;
+    
+    // whether to generate from an off-heap copy of the trained model, and the copy once it is made
+    private static boolean offHeap;
+    private static FrozenModel offHeapModel;
+    
+    // the text already learned, so copies are skipped, or null to learn everything
+    private static Fingerprints fingerprints;
+    
+    // the most bytes a model may take while training, 0 for no limit
+    private static long memoryBudget;
+    
+    // how many chars writePassage collects before each write
+    private static final int WRITE_CHUNK = 8192;
+    
+    // how many transitions of a document are learned between memory budget checks
+    private static final int TRAIN_CHUNK = 1 << 16;
 
     
     /**
-     * Reads and returns all contents of a file.
+     * Reads and tokenizes all contents of a file. The file is memory-mapped and decoded in bulk, and the line breaks
+     * are kept so paragraph tokens survive. Of a SubRip or WebVTT caption file, only the spoken text is read, streamed
+     * through a CaptionReader.
      * 
-     * @param filepath the filepath (including the filename) of the file to read
-     * @return a string containing all contents of the file
+     * @param path the file to read
+     * @param vocabulary the dictionary used to turn the tokens into ids
+     * @return an ordered list of the ids of the tokens in the file
+     * @throws IOException if the file can't be read
      */
-    private static String readFile(String filepath) {
-        File f = new File(filepath);        
-        Scanner scan = null;
-        try { // attempt to open the file
-            scan = new Scanner(f);
-            StringBuilder sb = new StringBuilder();
-
-            while (scan.hasNext()) { // while the file has more words append to the string builder
-                sb.append(scan.next());
-                sb.append(' '); // adding a space to separate words
+    public static IntList readTokens(Path path, Vocabulary vocabulary) throws IOException {
+        StageEvent event = Metrics.begin(Metrics.Stage.TOKENIZE);
+        IntList results = new IntList();
+        if (CaptionReader.detect(path) != null) {
+            try (Reader captions = CaptionReader.open(path)) {
+                new Tokenizer(false).tokenize(captions, idSink(vocabulary, results));
             }
-            // get string array with a single word per index
-            // List<String> temp = tokenizeString(sb.toString());
-            // return string array made into k length sequences of words at each index
-            return sb.toString();
-        } catch (IOException e) {
-            e.printStackTrace();
-            System.exit(0);
         }
-
-        finally {
-            scan.close(); // close scanner
+        else {
+            MappedFiles.tokenize(path, new Tokenizer(false), idSink(vocabulary, results));
         }
-
-        return null;
+        Metrics.end(event, results.size(), Files.size(path));
+        return results;
+    }
+    
+    /**
+     * Reads and tokenizes a transcript the way the clean path sees it: a line at a time, with the times, everything
+     * before them and the speaker labels removed from each line, as TranscriptEditor.cleanStream does. Of a SubRip or
+     * WebVTT caption file, only the spoken text is read.
+     * 
+     * @param path the transcript to read
+     * @param vocabulary the dictionary used to turn the tokens into ids
+     * @param labels the speaker labels to remove
+     * @return an ordered list of the ids of the tokens left
+     * @throws IOException if the file can't be read
+     */
+    public static IntList readTranscriptTokens(Path path, Vocabulary vocabulary, SpeakerLabels labels)
+            throws IOException {
+        StageEvent event = Metrics.begin(Metrics.Stage.TOKENIZE);
+        IntList results = new IntList();
+        Tokenizer tokenizer = new Tokenizer(false);
+        Tokenizer.TokenSink sink = idSink(vocabulary, results);
+        try (BufferedReader lines = new BufferedReader(CaptionReader.open(path))) {
+            String line;
+            while ((line = lines.readLine()) != null) {
+                tokenizer.feed(labels.strip(TranscriptEditor.containsTimeFormat(line)), sink);
+            }
+        }
+        tokenizer.finish(sink);
+        Metrics.end(event, results.size(), Files.size(path));
+        return results;
+    }
+    
+    /**
+     * Makes a token sink that interns every token and collects the ids, so no String is made for tokens that have
+     * been seen before.
+     * 
+     * @param vocabulary the dictionary of token ids
+     * @param results where to add the ids
+     * @return the sink
+     */
+    private static Tokenizer.TokenSink idSink(final Vocabulary vocabulary, final IntList results) {
+        return new Tokenizer.TokenSink() {
+            @Override
+            public void token(CharSequence text, int start, int end, int type) {
+                if (type == Tokenizer.PARAGRAPH) {
+                    results.add(vocabulary.id(Tokenizer.PARAGRAPH_TEXT));
+                }
+                else {
+                    results.add(vocabulary.id(text, start, end));
+                }
+            }
+        };
     }
     
 
@@ -68,157 +136,422 @@ public class PassageGenerator {
      * @return an ordered List of tokens
      */
     public static List<String> tokenizeString(String input) {
-        List<String> results = new ArrayList<String>();
-
-        // fix issues if any input documents use Windows line endings
-        input = input.replaceAll("\\r\\n?", "\n");
-
-        // reduce any instance of two or more newlines to only two newlines
-        input = input.replaceAll("(\\n\\n+)", "\n\n");
-
-        // use regular expressions to tokenize string
-        // this regular expression has 6 options:
-        // [a-zA-Z]+'?[a-zA-z]+ : a word of length >=2 or a contraction of length >= 3
-        // [a-zA-z] : single-character alphanumeric words
-        // [.] : a period
-        // [?] : a question mark
-        // [!] : an exclamation point
-        // [\\n]{2,} : two newlines
-        Pattern pattern = Pattern.compile("(?<![():])\\b\\d+\\b(?![:])|[a-zA-Z]+'?[a-zA-Z]+|"
-                + "[a-zA-Z]|[.]|[?]|[!]|[\\n]{2,}");
-        Matcher matcher = pattern.matcher(input);
-
-        // collect results
-        while (matcher.find()) {
-            results.add(matcher.group());
-        }
-        
-       
-        
-        return results;
-       
+        // one pass over the input: line endings, blank lines and the token rules are all handled by the Tokenizer.
+        // tokens are words of length >=2 or contractions of length >= 3, single letters, . ? !, paragraph breaks,
+        // and plain numbers.
+        StageEvent event = Metrics.begin(Metrics.Stage.TOKENIZE);
+        List<String> tokens = Tokenizer.tokenize(input, false);
+        Metrics.end(event, tokens.size(), input.length());
+        return tokens;
     }
     
     /**
-     * Adds length * 2 extra elements as a workaround for the fenceposts. Ensures if a key starts with the 2nd-to-last
-     * word, a full value will still be present after it.
-     * @param results - list of words.
-     * @param length - length of list elements.
+     * Learns an author's style. Each k-token sequence in the input becomes a state of the model, and the sequence k
+     * tokens later is recorded as one of its successors.
+     * 
+     * @param target the model to train
+     * @param input the state ids of the sequences at each position of the text
+     * @param length k, the number of tokens per state
      */
-    public static void addDuplicateElements(List<String> results, int length) {
-        int count = 0;
-        for (int i = 0; i <= length * 2; i++) {
-            results.add(results.get(i));
-            count++;
+    private static void trainModel(NGramModel target, int[] input, int length) {      
+        StageEvent event = Metrics.begin(Metrics.Stage.TRAIN);
+        // for each element in the list up to the original end
+        for (int i = 0; i < input.length - length; i++) {
+            target.addTransition(input[i], input[i + length]);
+        }      
+        Metrics.end(event, Math.max(input.length - length, 0), 0);
+    }
+    
+    /**
+     * Makes sure there is a model to train with sequences of the given length.
+     * 
+     * @param length k, the number of tokens per state
+     */
+    private static void ensureModel(int length) {
+        // training makes the off-heap copy stale
+        offHeapModel = null;
+        // a loaded snapshot is read-only, so copy it before training more
+        if (loadedModel != null) {
+            model = NGramModel.copyOf(loadedModel);
+            loadedModel = null;
         }
-        
+        // instantiates model
+        if (model == null) {
+            model = new NGramModel(length);
+        }
+        else if (model.k() != length) {
+            throw new IllegalArgumentException("The model was trained with " + model.k() + " words per key, not "
+                    + length);
+        }
+        model.setMemoryBudget(memoryBudget);
     }
 
     /**
-     * Learns an author's style. Returns a map with each unique word in the input as a key. The map values are Lists of
-     * the tokens that follow the key in the text.
+     * Reads a file, tokenizes it, and uses the tokens to train the NovelGenerator model.
      * 
-     * @param input an ordered list of tokens
+     * @param filepath the filepath (including the filename) of the file from which to learn
+     * @throws IOException if the file can't be read
      */
-    private static void trainModel(List<String> input, int length) {      
-        List<String> tempList = new ArrayList<>(); // creates a list to hold values
-        
-        // instantiates model map
-        if (model == null) {
-            model = new HashMap<String, List<String>>();
+    public static void learnFromFile(String filepath, int length) throws IOException {
+        ensureModel(length);
+        IntList tokens = readTokens(Paths.get(filepath), model.vocabulary());
+        learnFromTokens(model, deduplicate(tokens, model.vocabulary(), fingerprints), length);
+    }
+    
+    public static void learnFromString(String words, int length) {
+        ensureModel(length);
+        StageEvent event = Metrics.begin(Metrics.Stage.TOKENIZE);
+        IntList tokens = new IntList();
+        new Tokenizer(false).scan(words, 0, words.length(), true, idSink(model.vocabulary(), tokens));
+        Metrics.end(event, tokens.size(), words.length());
+        learnFromTokens(model, deduplicate(tokens, model.vocabulary(), fingerprints), length);
+    }
+    
+    /**
+     * Adds the transitions of one more text (a document) to a model. Only the new tokens are read, so the time this
+     * takes doesn't depend on how much the model already knows. Nothing links the document to the ones learned before
+     * or after it: its last states get no successor from it, and a generator that reaches a state without successors
+     * starts a new sentence.
+     * 
+     * If the model has a memory budget, the document is learned TRAIN_CHUNK transitions at a time, and whenever a
+     * chunk takes the model over the budget the rarest transitions are pruned, see NGramModel.enforceMemoryBudget, so
+     * one long document can't take the model far over it. Pruning numbers the states again, so each chunk looks up its
+     * states afresh.
+     * 
+     * @param target the model to train
+     * @param tokens the token ids, interned by the model's vocabulary
+     * @param length k, the number of tokens per state
+     */
+    public static void learnFromTokens(NGramModel target, IntList tokens, int length) {
+        if (tokens.size() < length) {
+            return;
         }
-        
-        
-        String key;
-        String value;
-        // for each element in the list up to the original end
-        for (int i = 0; i < input.size() - length; i++) {
-            // get key
-            key = input.get(i);
-            // get value
-            value = input.get(i + length);
+        int transitions = tokens.size() - 2 * length + 1;
+        if (target.memoryBudget() == 0 || transitions <= TRAIN_CHUNK) {
+            // return results in lengths k.
+            int[] sequences = getSequences(target, tokens, length);
             
-            if (model.containsKey(key)) {
-                // get list
-                tempList = model.get(key);  
-            }
-            else {
-                // create list
-                tempList = new ArrayList<String>();  
+            trainModel(target, sequences, length);
+            target.enforceMemoryBudget();
+            return;
+        }
+        int[] ids = tokens.toArray();
+        for (int from = 0; from < transitions; from += TRAIN_CHUNK) {
+            int to = Math.min(from + TRAIN_CHUNK, transitions);
+            // the chunk's transitions and the states they lead to, length positions further on
+            StageEvent event = Metrics.begin(Metrics.Stage.SEQUENCES);
+            int[] sequences = new int[to - from + length];
+            for (int i = 0; i < sequences.length; i++) {
+                sequences[i] = target.state(ids, from + i);
             }
-            // add value to list
-            tempList.add(value);
-            // add key value pair to map
-            model.put(key, tempList);
-        }      
+            Metrics.end(event, sequences.length, 0);
+            trainModel(target, sequences, length);
+            target.enforceMemoryBudget();
+        }
+    }
+    
+    /**
+     * Reads, tokenizes and learns from many files at once. Every file is counted into its own partial model on a
+     * fork-join pool, and the partial models are merged in file order, so the result is exactly the model that
+     * calling learnFromFile on each file in turn would build. With a memory budget, the partial models are pruned too,
+     * each to an equal share of the budget, one per thread of the pool, so the partials being trained at once take
+     * about the budget together; the result can differ from the sequential one in which rare transitions were dropped.
+     * 
+     * With fingerprints set, the files are first fingerprinted on the pool and then claimed in file order, so the
+     * text they share is kept in the same file as learnFromFile would keep it, whatever order the threads run in. This
+     * reads and tokenizes every file twice.
+     * 
+     * If a file can't be read, nothing is learned from any of them.
+     * 
+     * @param filepaths the files from which to learn, in order
+     * @param length k, the number of tokens per state
+     * @param pool the pool that does the work
+     * @throws IOException if a file can't be read
+     */
+    public static void learnFromFiles(List<String> filepaths, int length, ForkJoinPool pool) throws IOException {
+        ensureModel(length);
+        if (filepaths.isEmpty()) {
+            return;
+        }
+        NGramModel learned;
+        try {
+            boolean[][] keep = fingerprints == null ? null : claimFiles(filepaths, fingerprints, pool);
+            long share = memoryBudget == 0 ? 0 : Math.max(memoryBudget / pool.getParallelism(), 1);
+            learned = pool.invoke(new TrainTask(filepaths, 0, filepaths.size(), length, share, keep));
+        } catch (UncheckedIOException e) {
+            // the tasks can't throw the checked exception themselves
+            throw e.getCause();
+        }
+        model.merge(learned);
+        model.enforceMemoryBudget();
     }
     
+    /**
+     * Learns from many files at once on the common fork-join pool.
+     * 
+     * @param filepaths the files from which to learn, in order
+     * @param length k, the number of tokens per state
+     * @throws IOException if a file can't be read
+     */
+    public static void learnFromFiles(List<String> filepaths, int length) throws IOException {
+        learnFromFiles(filepaths, length, ForkJoinPool.commonPool());
+    }
     
-
     /**
-     * Reads a file, tokenizes it, and uses the tokens to train the NovelGenerator model.
+     * Fingerprints many files on a pool and claims them in file order, see Fingerprints.claim.
      * 
-     * @param filepath the filepath (including the filename) of the file from which to learn
+     * @param filepaths the files, in order
+     * @param seen the text learned so far
+     * @param pool the pool that does the work
+     * @return for each file, which of its paragraphs to keep, or null to skip the file
      */
-    public static void learnFromFile(String filepath, int length) {
-        String words = readFile(filepath);
+    private static boolean[][] claimFiles(List<String> filepaths, Fingerprints seen, ForkJoinPool pool) {
+        Fingerprints.Document[] documents = new Fingerprints.Document[filepaths.size()];
+        pool.invoke(new FingerprintTask(filepaths, documents, 0, documents.length));
+        boolean[][] keep = new boolean[documents.length][];
+        for (int i = 0; i < documents.length; i++) {
+            keep[i] = seen.claim(documents[i]);
+        }
+        return keep;
+    }
+    
+    /**
+     * Fingerprints a range of files: one file directly, a longer range by splitting it in half.
+     */
+    private static class FingerprintTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
         
-        List<String> tokens = tokenizeString(words);
-        if (tokens.size() < length) {
-            return;
+        private final List<String> filepaths;
+        private final Fingerprints.Document[] documents;
+        private final int from;
+        private final int to;
+        
+        FingerprintTask(List<String> filepaths, Fingerprints.Document[] documents, int from, int to) {
+            this.filepaths = filepaths;
+            this.documents = documents;
+            this.from = from;
+            this.to = to;
         }
-        // add elements to account for fencposting and lengths. Must be length * 2 to account for if
-        addDuplicateElements(tokens, length);
-        // return results in lengths k.
-        tokens = getSequencesStringList(tokens, length);
         
-       
-        trainModel(tokens, length);
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                Vocabulary vocabulary = new Vocabulary();
+                IntList tokens = read(filepaths.get(from), vocabulary);
+                StageEvent event = Metrics.begin(Metrics.Stage.DEDUPLICATE);
+                documents[from] = Fingerprints.fingerprint(tokens, vocabulary);
+                Metrics.end(event, tokens.size(), 0);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new FingerprintTask(filepaths, documents, from, middle),
+                    new FingerprintTask(filepaths, documents, middle, to));
+        }
     }
     
-    public static void learnFromString(String words, int length) {
-        List<String> tokens = tokenizeString(words);
-        if (tokens.size() < length) {
-            return;
+    /**
+     * Reads and tokenizes a file on a pool thread, where the IOException has to travel unchecked; learnFromFiles
+     * rethrows it.
+     */
+    private static IntList read(String filepath, Vocabulary vocabulary) {
+        try {
+            return readTokens(Paths.get(filepath), vocabulary);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-        // add elements to account for fencposting and lengths. Must be length * 2 to account for if
-        addDuplicateElements(tokens, length);
-        // return results in lengths k.
-        tokens = getSequencesStringList(tokens, length);
+    }
+    
+    /**
+     * Trains a partial model on a range of files: one file is trained directly, a longer range is split in half and
+     * the right half's model is merged into the left half's.
+     */
+    private static class TrainTask extends RecursiveTask<NGramModel> {
+        private static final long serialVersionUID = 1L;
         
-       
-        trainModel(tokens, length);
+        private final List<String> filepaths;
+        private final int from;
+        private final int to;
+        private final int length;
+        // each partial model's share of the memory budget
+        private final long memoryBudget;
+        // what claimFiles kept of each file, or null to keep everything
+        private final boolean[][] keep;
+        
+        TrainTask(List<String> filepaths, int from, int to, int length, long memoryBudget, boolean[][] keep) {
+            this.filepaths = filepaths;
+            this.from = from;
+            this.to = to;
+            this.length = length;
+            this.memoryBudget = memoryBudget;
+            this.keep = keep;
+        }
+        
+        @Override
+        protected NGramModel compute() {
+            if (to - from == 1) {
+                NGramModel partial = new NGramModel(length);
+                partial.setMemoryBudget(memoryBudget);
+                if (keep != null && keep[from] == null) {
+                    // the whole file was learned before
+                    return partial;
+                }
+                IntList tokens = read(filepaths.get(from), partial.vocabulary());
+                if (keep != null) {
+                    tokens = Fingerprints.cut(tokens, partial.vocabulary(), keep[from]);
+                }
+                learnFromTokens(partial, tokens, length);
+                return partial;
+            }
+            int middle = (from + to) >>> 1;
+            TrainTask left = new TrainTask(filepaths, from, middle, length, memoryBudget, keep);
+            left.fork();
+            NGramModel right = new TrainTask(filepaths, middle, to, length, memoryBudget, keep).compute();
+            NGramModel merged = left.join();
+            merged.merge(right);
+            merged.enforceMemoryBudget();
+            return merged;
+        }
+    }
+    
+    /**
+     * Cuts the text already learned out of a document, see Fingerprints.
+     * 
+     * @param tokens the document's token ids
+     * @param vocabulary the vocabulary that numbers the tokens
+     * @param seen the text learned so far, or null to keep everything
+     * @return the tokens left
+     */
+    private static IntList deduplicate(IntList tokens, Vocabulary vocabulary, Fingerprints seen) {
+        if (seen == null) {
+            return tokens;
+        }
+        StageEvent event = Metrics.begin(Metrics.Stage.DEDUPLICATE);
+        IntList kept = seen.filter(tokens, vocabulary);
+        Metrics.end(event, tokens.size(), 0);
+        return kept;
     }
     
     /**
-     * puts together a list of string sequences of length k.
+     * Finds the state id of the sequence of length k at each position of a text. The sequences are packed token ids,
+     * so no String is built for them.
      * 
-     * @param big list of individual words in a file.
-     * @param length k words to be stored in each index.
-     * @return string array of sequences of length k.
+     * @param target the model that numbers the states.
+     * @param tokens list of the token ids in a text.
+     * @param k words to be stored in each sequence.
+     * @return the state id of the sequence starting at each index, for every index with at least k tokens left.
      */
-    public static List<String> getSequencesStringList(List<String> bigString, int k) {
-        StringBuilder sB = new StringBuilder();
-        char space = ' ';
-        // create result list
-        List<String> result = null;
-        // if the entered string is longer than k
-        if (bigString.size() >= k) {
-            // result is an arraylist
-            result = new ArrayList<String>();
-            // for each element in the initial list - k
-            for (int i = 0; i < bigString.size() - k; i++) {
+    public static int[] getSequences(NGramModel target, IntList tokens, int k) {
+        StageEvent event = Metrics.begin(Metrics.Stage.SEQUENCES);
+        int[] ids = tokens.toArray();
+        int[] result = new int[Math.max(ids.length - k + 1, 0)];
+        // for each element in the initial list - k
+        for (int i = 0; i < result.length; i++) {
+            result[i] = target.state(ids, i);
+        }
+        Metrics.end(event, ids.length, 0);
+        return result;
+    }
 
-                for (int j = 0; j < k; j++) { // loop k times for each i to add k words to each index of result
-                    // append each word and a space to string builder
-                    sB.append(bigString.get(i + j));
-                    sB.append(space);
-                }
-                result.add(sB.toString()); // add built string to current index
-                sB.setLength(0); // clear string builder for next loop.
+    /**
+     * Saves the trained model to a snapshot file, so later runs can load it instead of training again.
+     * 
+     * @param filepath where to save the model
+     * @throws IOException if the file can't be written
+     */
+    public static void saveModel(String filepath) throws IOException {
+        PassageModel current = generationModel();
+        if (current == null) {
+            throw new IllegalStateException("There is no model to save");
+        }
+        FrozenModel frozen = current instanceof NGramModel ? ((NGramModel) current).freeze() : (FrozenModel) current;
+        frozen.save(Paths.get(filepath));
+    }
+    
+    /**
+     * Loads a model saved by saveModel, replacing the current model and forgetting the fingerprints of what that model
+     * learned. The file is memory-mapped, so nothing has to be rebuilt before generating.
+     * 
+     * @param filepath the snapshot file
+     * @return the number of words per key the model was trained with
+     * @throws IOException if the file can't be read or isn't a model snapshot
+     */
+    public static int loadModel(String filepath) throws IOException {
+        loadedModel = FrozenModel.load(Paths.get(filepath));
+        model = null;
+        offHeapModel = null;
+        // the fingerprints belong to the text the old model learned
+        fingerprints = null;
+        return loadedModel.k();
+    }
+    
+    /**
+     * @return the model to generate from: the loaded snapshot if there is one, otherwise the trained model or its
+     *         off-heap copy
+     */
+    private static PassageModel generationModel() {
+        if (loadedModel != null) {
+            return loadedModel;
+        }
+        if (offHeap && model != null) {
+            if (offHeapModel == null) {
+                offHeapModel = model.offHeap();
             }
-        } 
-        return result;
+            return offHeapModel;
+        }
+        return model;
+    }
+    
+    /**
+     * Chooses whether passages are generated from an off-heap copy of the trained model. The copy is made when the
+     * first passage is generated after training, and training more makes a new one. A loaded snapshot is memory-mapped,
+     * so it is always off the heap. With large models this keeps the state and successor tables out of the garbage
+     * collector's way; see FrozenModel.offHeap.
+     * 
+     * The trained model stays on the heap next to the copy, so training can go on and getModel still returns it; the
+     * copy saves garbage collection work, not memory. To generate from a large model with only the off-heap copy in
+     * memory, save it and load the snapshot, or use Generator.offHeap and then setModelNull.
+     * 
+     * @param enabled true to generate from an off-heap copy
+     */
+    public static void setOffHeap(boolean enabled) {
+        offHeap = enabled;
+        offHeapModel = null;
+    }
+
+    /**
+     * Caps how much memory the model may take while training. Once a text takes the model over the budget, its rarest
+     * transitions and the states left without any are dropped; NGramModel.droppedTransitions and the like report how
+     * much. If the vocabulary alone takes more than the budget, nothing is pruned and NGramModel.overBudget says so.
+     * The budget applies to the current model and to any made later.
+     * 
+     * @param bytes the budget, 0 for no limit
+     */
+    public static void setMemoryBudget(long bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("The memory budget can't be negative, was " + bytes);
+        }
+        memoryBudget = bytes;
+        if (model != null) {
+            model.setMemoryBudget(bytes);
+        }
+    }
+
+    /**
+     * Makes training skip documents and paragraphs that were learned before. The fingerprints of everything learned
+     * are added to the set, which can be saved and loaded again to skip copies across runs. Replacing the model with
+     * setModelNull or loadModel forgets the set, so set it after those.
+     * 
+     * @param seen the fingerprints of the text learned so far, or null to learn everything
+     */
+    public static void setFingerprints(Fingerprints seen) {
+        fingerprints = seen;
+    }
+    
+    /**
+     * @return the fingerprints of the text learned so far, or null if every text is learned
+     */
+    public static Fingerprints getFingerprints() {
+        return fingerprints;
     }
 
     /**
@@ -226,98 +559,291 @@ public class PassageGenerator {
      * 
      * @return the model
      */
-    public static Map<String, List<String>> getModel() {
+    public static NGramModel getModel() {
         return model;
     }
     
     /**
-     * Sets the model as null for testing purposes.
+     * Sets the model as null for testing purposes. The fingerprints of what it learned are forgotten with it.
      */
     public static void setModelNull() {
         model = null;
+        loadedModel = null;
+        offHeapModel = null;
+        fingerprints = null;
     }
 
     /**
      * Generates a novel with approximately as many tokens as the requested length. The novel may be longer than the
-     * requested length (it will finish its last sentence), but it will never be shorter.
+     * requested length (it will finish its last sentence), but it will never be shorter. See PassageIterator for how
+     * the length is bounded.
      * 
-     * @param length a requested minimum number of tokens of the auto-generated novel
-     * @return an auto-generated novel
+     * @param size a requested minimum number of tokens of the auto-generated novel
+     * @param length k, the number of tokens per state. It must be the model's k.
+     * @return an auto-generated novel, or null if there is no model
      */
     public static String generatePassage(int size, int length) {
-        
+        PassageModel current = generationModel();
+        if (current == null) {
+            return null;
+        }
+        if (current.k() != length) {
+            throw new IllegalArgumentException("The model was trained with " + current.k()
+                    + " words per key, not " + length);
+        }
+        return generatePassage(current, size, ThreadLocalRandom.current());
+    }
+    
+    /**
+     * Generates a novel from the given model, like generatePassage(size, length), with the model's own k. Nothing
+     * static is used, so passages can be generated from different models at the same time.
+     * 
+     * @param model the model to generate from
+     * @param size a requested minimum number of tokens of the auto-generated novel
+     * @param random where the randomness comes from
+     * @return an auto-generated novel, or null if the model is empty
+     */
+    public static String generatePassage(PassageModel model, int size, RandomGenerator random) {
+        StageEvent event = Metrics.begin(Metrics.Stage.GENERATE);
+        int count = 0;
+        boolean generated = false;
+        try {
+            PassageIterator tokens = new PassageIterator(model, size, random);
+            if (!tokens.hasNext()) {
+                return null;
+            }
+            StringBuilder sb = new StringBuilder();
+            while (tokens.hasNext()) {
+                sb.append(tokens.next());
+                sb.append(' ');
+                count++;
+            }
+            generated = true;
+            return sb.toString();
+        } finally {
+            endGenerate(event, count, generated);
+        }
+    }
+    
+    /**
+     * Generates a novel lazily, as a stream of its tokens. Nothing is generated until the stream is used.
+     * 
+     * @param model the model to generate from
+     * @param size a requested minimum number of tokens
+     * @param random where the randomness comes from. Only this stream should use it while it is read.
+     * @return the tokens, none if the model is empty
+     */
+    public static Stream<String> streamPassage(PassageModel model, int size, RandomGenerator random) {
+        return StreamSupport.stream(() -> Spliterators.spliteratorUnknownSize(new PassageIterator(model, size,
+                random), Spliterator.ORDERED | Spliterator.NONNULL), Spliterator.ORDERED | Spliterator.NONNULL, false);
+    }
+    
+    /**
+     * Writes a novel as it is generated, in the same format as generatePassage, a chunk at a time. Memory use doesn't
+     * depend on the length of the novel.
+     * 
+     * @param model the model to generate from
+     * @param size a requested minimum number of tokens
+     * @param random where the randomness comes from
+     * @param out where to write the novel. It is flushed, not closed.
+     * @return false if the model is empty, so nothing was written
+     * @throws IOException if writing fails
+     */
+    public static boolean writePassage(PassageModel model, int size, RandomGenerator random, Writer out)
+            throws IOException {
+        StageEvent event = Metrics.begin(Metrics.Stage.GENERATE);
+        int count = 0;
+        boolean generated = false;
+        try {
+            PassageIterator tokens = new PassageIterator(model, size, random);
+            if (!tokens.hasNext()) {
+                return false;
+            }
+            char[] chunk = new char[WRITE_CHUNK];
+            int used = 0;
+            while (tokens.hasNext()) {
+                String word = tokens.next();
+                count++;
+                int length = word.length();
+                if (used + length + 1 > chunk.length) {
+                    out.write(chunk, 0, used);
+                    used = 0;
+                }
+                if (length + 1 > chunk.length) {
+                    out.write(word);
+                    out.write(' ');
+                }
+                else {
+                    word.getChars(0, length, chunk, used);
+                    used += length;
+                    chunk[used++] = ' ';
+                }
+            }
+            out.write(chunk, 0, used);
+            out.flush();
+            generated = true;
+            return true;
+        } finally {
+            endGenerate(event, count, generated);
+        }
+    }
 
-        // instantiate stringBuilder
-        StringBuilder sb = new StringBuilder();
-        
-        // set first value to startKey
-        String current = getStartingPoint();
+    /**
+     * Ends a generate event however generation stopped. Only finished passages go into the latency histogram, so an
+     * empty model or a failed write doesn't skew it.
+     * 
+     * @param event what Metrics.begin returned
+     * @param count the tokens generated
+     * @param generated true if the passage was finished
+     */
+    private static void endGenerate(StageEvent event, int count, boolean generated) {
+        if (generated) {
+            Metrics.endPassage(event, count);
+        }
+        else {
+            Metrics.end(event, count, 0);
+        }
+    }
+    
+    /**
+     * Writes a novel from the current model as it is generated.
+     * 
+     * @param size a requested minimum number of tokens
+     * @param out where to write the novel. It is flushed, not closed.
+     * @return false if there is no model or it is empty, so nothing was written
+     * @throws IOException if writing fails
+     */
+    public static boolean writePassage(int size, Writer out) throws IOException {
+        PassageModel current = generationModel();
+        if (current == null) {
+            return false;
+        }
+        return writePassage(current, size, ThreadLocalRandom.current(), out);
+    }
+    
+    /**
+     * Generates many novels at once on a fork-join pool. Novel i gets its own random generator, the i-th split of a
+     * SplittableRandom seeded with the master seed, so the same seed gives the same novels however many threads do
+     * the work.
+     * 
+     * @param model the model to generate from
+     * @param count how many novels to generate
+     * @param size a requested minimum number of tokens of each novel
+     * @param seed the master seed
+     * @param pool the pool that does the work
+     * @return the novels in order, each null if the model is empty
+     */
+    public static List<String> generatePassages(PassageModel model, int count, int size, long seed,
+            ForkJoinPool pool) {
+        if (model instanceof NGramModel) {
+            // build the sampling tables before the threads share the model
+            ((NGramModel) model).buildSamplers();
+        }
+        SplittableRandom master = new SplittableRandom(seed);
+        SplittableRandom[] randoms = new SplittableRandom[count];
+        for (int i = 0; i < count; i++) {
+            randoms[i] = master.split();
+        }
+        String[] results = new String[count];
+        pool.invoke(new GenerateTask(model, size, randoms, results, 0, count));
+        return Arrays.asList(results);
+    }
+    
+    /**
+     * Generates many novels from the current model at once, on the common fork-join pool.
+     * 
+     * @param count how many novels to generate
+     * @param size a requested minimum number of tokens of each novel
+     * @param length k, the number of tokens per state. It must be the model's k.
+     * @param seed the master seed. The same seed gives the same novels.
+     * @return the novels in order, or null if there is no model
+     */
+    public static List<String> generatePassages(int count, int size, int length, long seed) {
+        PassageModel current = generationModel();
         if (current == null) {
             return null;
         }
+        if (current.k() != length) {
+            throw new IllegalArgumentException("The model was trained with " + current.k()
+                    + " words per key, not " + length);
+        }
+        return generatePassages(current, count, size, seed, ForkJoinPool.commonPool());
+    }
+    
+    /**
+     * Generates the novels in a range of indexes: a short range directly, a longer one split in half.
+     */
+    private static class GenerateTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        // how many novels a task generates without splitting
+        private static final int PASSAGES_PER_TASK = 8;
         
-        sb.append(current);
-        
-        int wordCount = 1;
+        private final PassageModel model;
+        private final int size;
+        private final SplittableRandom[] randoms;
+        private final String[] results;
+        private final int from;
+        private final int to;
         
-        while (wordCount < size) { // while word count is below the minimum add more words
-            current = getRandomResult(current);
-            sb.append(current);
-            wordCount += length; // increase by length, since current will be a string of length amount of words
+        GenerateTask(PassageModel model, int size, SplittableRandom[] randoms, String[] results, int from, int to) {
+            this.model = model;
+            this.size = size;
+            this.randoms = randoms;
+            this.results = results;
+            this.from = from;
+            this.to = to;
         }
         
-        // if not ended with a punctuation, continue until ending with punctuation.
-        while ((!current.endsWith("! ") && !current.endsWith("? ") && !current.endsWith(". "))) {
-            current = getRandomResult(current);
-            sb.append(current);
-   
+        @Override
+        protected void compute() {
+            if (to - from <= PASSAGES_PER_TASK) {
+                for (int i = from; i < to; i++) {
+                    results[i] = generatePassage(model, size, randoms[i]);
+                }
+                return;
             }
-        return sb.toString();
+            int middle = (from + to) >>> 1;
+            invokeAll(new GenerateTask(model, size, randoms, results, from, middle),
+                    new GenerateTask(model, size, randoms, results, middle, to));
+        }
     }
     
     /**
      * Randomly gets a starting spot where the first letter of the token is capital.
-     * @param start - initial key
-     * @return - result , starting key for novel.
+     * @return - result , starting state for novel, or -1 if there is no model or no state starts with a capital.
      */
-    public static String getStartingPoint() {
+    public static int getStartingPoint() {
+        PassageModel model = generationModel();
         if (model == null) {
-            return null;
-        }
-        // get all keys
-        Set<String> keySet = model.keySet();
-        // get a key
-        String temp = keySet.iterator().next();
-        
-        // loop through random result 3 times to make key more random.
-        for (int i = 0; i <= 2; i++) {
-            temp = getRandomResult(temp);  
+            return -1;
         }
-        
-        char firstChar = temp.charAt(0);
-        while (!Character.isUpperCase(firstChar)) { // keep looping until the first char of temp is uppercase.
-            temp = getRandomResult(temp);
-            firstChar = temp.charAt(0);
-        }
-        String result = temp;
-        return result; // return new starting key.
+        return getStartingPoint(model, ThreadLocalRandom.current());
     }
     
     /**
-     * Gets a random value from the key value pair with s as the key.
-     * @param s - string key s.
-     * @return - string value.
+     * Randomly gets a starting spot of the given model where the first letter of the token is capital. States are
+     * picked in proportion to how often they were seen, from an index built with the model, so no walking is needed.
+     * @param model - the model to start in.
+     * @param random - where the randomness comes from.
+     * @return - result , starting state for novel, or -1 if no state starts with a capital.
      */
-    public static String getRandomResult(String s) {
-        List<String> valueOptions = model.get(s); // gets potential key options
-        
-        int option = (int) (Math.random() * valueOptions.size()); // chooses an integer representing the option.
-        
-        return valueOptions.get(option);
+    public static int getStartingPoint(PassageModel model, RandomGenerator random) {
+        return model.sampleStart(random);
+    }
+    
+    /**
+     * Gets a random successor of a state. Each successor is as likely as it was frequent in the training text. A state
+     * without successors is followed by a random sentence start, see getStartingPoint.
+     * @param s - state id s.
+     * @return - state id of the successor.
+     */
+    public static int getRandomResult(int s) {
+        // successors are picked in proportion to how often they followed s, in constant time
+        return PassageIterator.randomSuccessor(generationModel(), s, ThreadLocalRandom.current());
     }
     
     public static void getFiles(Scanner scan, int size) {
-        
+        List<String> filenames = new ArrayList<String>();
 
         System.out.println("Now enter your filenames in the format './filename.txt', enter '-999' to stop:");
 
@@ -334,25 +860,46 @@ public class PassageGenerator {
                 System.out.println("Invalid filename format. Please enter in the format './filename.txt'");
                 continue;
             }
-            learnFromFile(filename, size);
+            filenames.add(filename);
+        }
+        // skipping copies of the same speech keeps them from skewing the successor counts toward it, but every file is
+        // read twice to find them
+        boolean skipCopies = InputValidation.queryIntFromOptions(TranscriptEditorMain.INDICATOR, scan,
+                "Enter 1 to skip text repeated across the files (reads each file twice), and 0 to learn all of it: ",
+                "Enter 0 or 1: ") == 1;
+        if (skipCopies && fingerprints == null) {
+            fingerprints = new Fingerprints();
+        }
+        else if (!skipCopies) {
+            fingerprints = null;
+        }
+        long skipped = skipCopies ? fingerprints.skippedTokens() : 0;
+        // learn from all the files at once
+        try {
+            learnFromFiles(filenames, size);
+        } catch (IOException e) {
+            System.out.println("Couldn't read the files, so none of them were learned: " + e.getMessage());
+            return;
+        }
+        if (skipCopies && fingerprints.skippedTokens() > skipped) {
+            System.out.println("Skipped " + (fingerprints.skippedTokens() - skipped) + " words of repeated text.");
         }
 
     }
     
-    public static void getStrings(Scanner scan, int size) {
-        StringBuilder sb = new StringBuilder();
+    /**
+     * Learns from typed, pasted or piped text, read like TranscriptEditor.readStringInput.
+     * 
+     * @param input the console input
+     * @param size k, the number of tokens per state
+     * @throws IOException if reading fails
+     */
+    public static void getStrings(ConsoleInput input, int size) throws IOException {
         System.out.println("Type in or paste your text. Type -999 followed by a new line to stop!");
-        while (true) {
-            String input = scan.nextLine();
-            if (input.equals("-999")) {
-                break;
-            }
-            // Do something with the input if needed
-            sb.append(input);
-        }
-        
-        
-        learnFromString(sb.toString(), size);
+        StageEvent event = Metrics.begin(Metrics.Stage.READ);
+        String text = input.readUntil(ConsoleInput.SENTINEL);
+        Metrics.end(event, 0, text.length());
+        learnFromString(text, size);
     }
 
     /**
@@ -0,0 +1,130 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.random.RandomGenerator;
+
+/**
+ * Generates a passage lazily, one token at a time. Only the current state is kept, so the first token is ready in
+ * constant time and memory use doesn't depend on how long the passage gets.
+ *
+ * The passage starts at a random sentence-start state and walks the model until it has at least the requested number
+ * of tokens, then keeps going until a state ends a sentence. Once it is FREE_TOKENS_AFTER_LENGTH tokens past the
+ * requested length, it only takes successors closer to a sentence end, so its length is bounded.
+ */
+public class PassageIterator implements Iterator<String> {
+
+    // how many tokens past the requested length a passage may wander freely before it is steered to a sentence end
+    private static final int FREE_TOKENS_AFTER_LENGTH = 50;
+
+    private final PassageModel model;
+    private final int size;
+    private final RandomGenerator random;
+
+    // the state whose tokens are being returned, -1 when the passage is over
+    private int state;
+    // the next token of the state to return
+    private int index;
+    private int wordCount;
+    private int freeSteps;
+
+    /**
+     * @param model the model to generate from
+     * @param size a requested minimum number of tokens
+     * @param random where the randomness comes from. Only this iterator should use it while the passage is generated.
+     */
+    public PassageIterator(PassageModel model, int size, RandomGenerator random) {
+        this.model = model;
+        this.size = size;
+        this.random = random;
+        this.state = model.sampleStart(random);
+        this.wordCount = 1;
+        this.freeSteps = FREE_TOKENS_AFTER_LENGTH / model.k();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return state >= 0;
+    }
+
+    @Override
+    public String next() {
+        if (state < 0) {
+            throw new NoSuchElementException();
+        }
+        String word = model.word(model.token(state, index++));
+        if (index == model.k()) {
+            index = 0;
+            advance();
+        }
+        return word;
+    }
+
+    /**
+     * Moves to the next state once every token of the current one was returned.
+     */
+    private void advance() {
+        if (wordCount < size) { // while word count is below the minimum add more words
+            state = randomSuccessor(model, state, random);
+            wordCount += model.k(); // increase by k, since a state is k words
+        }
+        else if (model.endsSentence(state)) {
+            state = -1;
+        }
+        else if (freeSteps > 0) {
+            freeSteps--;
+            state = randomSuccessor(model, state, random);
+        }
+        else {
+            // -1 if no sentence end can be reached, which ends the passage here
+            state = closerSuccessor(model, state, random);
+        }
+    }
+
+    /**
+     * Gets a random successor of a state. A state with no successors (the end of a document) is followed by a new
+     * sentence start from sampleStart, so the passage goes on with a sentence instead of in the middle of one. Only a
+     * model with no sentence starts at all falls back to a uniformly random state.
+     *
+     * @param model the model to walk
+     * @param state a state id
+     * @param random where the randomness comes from
+     * @return the state id of the next state
+     */
+    static int randomSuccessor(PassageModel model, int state, RandomGenerator random) {
+        if (model.successorCount(state) == 0) {
+            int start = model.sampleStart(random);
+            return start >= 0 ? start : random.nextInt(model.stateCount());
+        }
+        return model.sample(state, random);
+    }
+
+    /**
+     * Gets a random successor of a state that is one step closer to a sentence end. Each such successor is as likely
+     * as it was frequent after the state in the training text.
+     *
+     * @param model the model to walk
+     * @param state a state id that doesn't end a sentence
+     * @param random where the randomness comes from
+     * @return the state id of the successor, or -1 if no sentence end can be reached from the state
+     */
+    static int closerSuccessor(PassageModel model, int state, RandomGenerator random) {
+        int distance = model.distanceToEnd(state);
+        if (distance < 0) {
+            return -1;
+        }
+        long total = 0;
+        for (int i = 0; i < model.successorCount(state); i++) {
+            if (model.distanceToEnd(model.successor(state, i)) == distance - 1) {
+                total += model.successorWeight(state, i);
+            }
+        }
+        long pick = random.nextLong(total);
+        for (int i = 0;; i++) {
+            if (model.distanceToEnd(model.successor(state, i)) == distance - 1) {
+                pick -= model.successorWeight(state, i);
+                if (pick < 0) {
+                    return model.successor(state, i);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+import java.util.random.RandomGenerator;
+
+/**
+ * What the passage generator needs from a model: states of k tokens, their successors, and the text of their tokens.
+ * States and tokens are identified by int ids counted from 0.
+ */
+public interface PassageModel {
+
+    /**
+     * @return how many tokens make up a state
+     */
+    int k();
+
+    /**
+     * @return the number of distinct states
+     */
+    int stateCount();
+
+    /**
+     * @return the number of distinct tokens
+     */
+    int vocabularySize();
+
+    /**
+     * @param id a token id
+     * @return the token's text
+     */
+    String word(int id);
+
+    /**
+     * @param state a state id
+     * @param index which token of the state, from 0 to k - 1
+     * @return the token id
+     */
+    int token(int state, int index);
+
+    /**
+     * @param state a state id
+     * @return how many distinct states followed the state
+     */
+    int successorCount(int state);
+
+    /**
+     * @param state a state id
+     * @param index which successor, from 0 to successorCount(state) - 1
+     * @return the successor's state id
+     */
+    int successor(int state, int index);
+
+    /**
+     * @param state a state id
+     * @param index which successor, from 0 to successorCount(state) - 1
+     * @return how many times the successor followed the state
+     */
+    int successorWeight(int state, int index);
+
+    /**
+     * Picks a random successor of a state, each with probability proportional to how often it followed the state.
+     *
+     * @param state a state id. It must have at least one successor.
+     * @param random where the randomness comes from
+     * @return the successor's state id
+     */
+    int sample(int state, RandomGenerator random);
+
+    /**
+     * Picks a random state to start a passage at. Only states whose first token starts with an uppercase letter and
+     * that have successors are picked, each with probability proportional to how often it was followed by another.
+     *
+     * @param random where the randomness comes from
+     * @return the state id, or -1 if there is no such state
+     */
+    int sampleStart(RandomGenerator random);
+
+    /**
+     * @param state a state id
+     * @return the fewest steps from the state to one that ends a sentence: 0 if the state ends one, -1 if no sentence
+     *         end can be reached from it
+     */
+    int distanceToEnd(int state);
+
+    /**
+     * @param state a state id
+     * @return true if the last token of the state is sentence-ending punctuation
+     */
+    default boolean endsSentence(int state) {
+        String last = word(token(state, k() - 1));
+        return last.equals(".") || last.equals("?") || last.equals("!");
+    }
+}
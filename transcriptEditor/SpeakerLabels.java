@@ -0,0 +1,306 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Removes speaker labels such as "SEN. SMITH:" or "Speaker 2 [00:01:02]" from transcript lines. The label patterns
+ * and speaker names are compiled into one Aho-Corasick automaton, so a line is stripped in a single pass and the cost
+ * doesn't grow with the number of names.
+ *
+ * In a pattern, # stands for a run of one or more digits. So do the digits of patterns and names: "Speaker 2" matches
+ * any speaker number. A speaker name is removed wherever it is followed by a colon. Matching is case-sensitive, and a
+ * label is only removed where it doesn't start or end in the middle of a word. Where labels overlap, the one starting
+ * first is removed, and the longest of those starting at the same place.
+ *
+ * A SpeakerLabels is immutable once built, so threads can share it.
+ */
+public class SpeakerLabels {
+
+    /**
+     * The patterns used when no others are given.
+     */
+    public static final List<String> DEFAULT_PATTERNS = Collections
+            .unmodifiableList(Arrays.asList("Speaker #:", "Speaker #", "[#:#:#]", "[#:#]"));
+
+    private static final SpeakerLabels DEFAULTS = new SpeakerLabels(DEFAULT_PATTERNS, Collections.<String>emptyList());
+
+    // the symbol a run of digits is read as, a noncharacter so it can't be confused with text
+    private static final char DIGITS = '\uFFFF';
+
+    // the trie. Node 0 is the root. Each node has a linked list of children, used to build the failure links.
+    private int nodeCount = 1;
+    private int[] firstChild = new int[64];
+    private int[] nextSibling = new int[64];
+    private char[] symbols = new char[64];
+    // the longest proper suffix of a node that is also in the trie
+    private int[] fail = new int[64];
+    // the length in symbols of the pattern ending at a node, 0 if none does
+    private int[] patternLength = new int[64];
+    // the nearest node on the failure chain where a pattern ends, -1 if none
+    private int[] outputLink = new int[64];
+    private int maxLength;
+
+    // open addressing hash table of child lookups: key (node << 16 | symbol), value child node, 0 in empty slots
+    private long[] childKeys = new long[128];
+    private int[] childNodes = new int[128];
+
+    /**
+     * Builds the automaton.
+     *
+     * @param patterns label patterns, with # for any run of digits
+     * @param names speaker names, removed where they are followed by a colon
+     */
+    public SpeakerLabels(Collection<String> patterns, Collection<String> names) {
+        Arrays.fill(firstChild, -1);
+        for (String pattern : patterns) {
+            add(pattern);
+        }
+        for (String name : names) {
+            if (!name.isEmpty()) {
+                add(name + ":");
+            }
+        }
+        link();
+    }
+
+    /**
+     * @return the automaton for the default patterns
+     */
+    public static SpeakerLabels defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * Reads a list of patterns or names, one per line. Blank lines are skipped and the rest are trimmed.
+     *
+     * @param path the file to read
+     * @return the lines
+     * @throws IOException if the file can't be read
+     */
+    public static List<String> readList(Path path) throws IOException {
+        List<String> results = new ArrayList<String>();
+        for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+            line = line.trim();
+            if (!line.isEmpty()) {
+                results.add(line);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Removes every label from a line.
+     *
+     * @param line the line
+     * @return the line without its labels. The same String if it has none.
+     */
+    public String strip(String line) {
+        if (maxLength == 0) {
+            return line;
+        }
+        // the chosen labels, as a stack of [start, end) ranges ordered by start
+        IntList ranges = null;
+        // char index where each of the last maxLength symbols started
+        int[] symbolStarts = new int[maxLength];
+        int symbolIndex = 0;
+        int node = 0;
+        int length = line.length();
+        int i = 0;
+        while (i < length) {
+            int start = i;
+            char symbol = line.charAt(i++);
+            if (isDigit(symbol)) {
+                while (i < length && isDigit(line.charAt(i))) {
+                    i++;
+                }
+                symbol = DIGITS;
+            }
+            symbolStarts[symbolIndex % maxLength] = start;
+
+            int next = child(node, symbol);
+            while (next < 0 && node != 0) {
+                node = fail[node];
+                next = child(node, symbol);
+            }
+            node = next < 0 ? 0 : next;
+
+            // the longest label ending here that lies on word boundaries
+            int match = patternLength[node] > 0 ? node : outputLink[node];
+            for (; match >= 0; match = outputLink[match]) {
+                int matchStart = symbolStarts[(symbolIndex - patternLength[match] + 1) % maxLength];
+                if (onBoundary(line, matchStart) && onBoundary(line, i)) {
+                    if (ranges == null) {
+                        ranges = new IntList();
+                    }
+                    choose(ranges, matchStart, i);
+                    break;
+                }
+            }
+            symbolIndex++;
+        }
+        if (ranges == null) {
+            return line;
+        }
+
+        StringBuilder sb = new StringBuilder(length);
+        int kept = 0;
+        for (int r = 0; r < ranges.size(); r += 2) {
+            sb.append(line, kept, ranges.get(r));
+            kept = ranges.get(r + 1);
+        }
+        sb.append(line, kept, length);
+        return sb.toString();
+    }
+
+    /**
+     * Adds a label to the chosen ones. Labels arrive in order of their end, so a new one either covers the last chosen
+     * ones (and replaces them), overlaps them (and loses), or comes after them.
+     */
+    private static void choose(IntList ranges, int start, int end) {
+        int last = ranges.size();
+        while (last > 0 && start <= ranges.get(last - 2)) {
+            last -= 2;
+        }
+        if (last > 0 && start < ranges.get(last - 1)) {
+            return;
+        }
+        ranges.truncate(last);
+        ranges.add(start);
+        ranges.add(end);
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * @return true unless the index is between two letters or digits
+     */
+    private static boolean onBoundary(String line, int index) {
+        return index == 0 || index == line.length() || !Character.isLetterOrDigit(line.charAt(index - 1))
+                || !Character.isLetterOrDigit(line.charAt(index));
+    }
+
+    /**
+     * Adds a pattern to the trie.
+     */
+    private void add(String pattern) {
+        int node = 0;
+        int length = 0;
+        for (int i = 0; i < pattern.length();) {
+            char symbol = pattern.charAt(i++);
+            if (symbol == '#' || isDigit(symbol)) {
+                while (i < pattern.length() && isDigit(pattern.charAt(i))) {
+                    i++;
+                }
+                symbol = DIGITS;
+            }
+            int next = child(node, symbol);
+            if (next < 0) {
+                next = newNode(node, symbol);
+            }
+            node = next;
+            length++;
+        }
+        if (length > 0) {
+            patternLength[node] = length;
+            maxLength = Math.max(maxLength, length);
+        }
+    }
+
+    private int newNode(int parent, char symbol) {
+        if (nodeCount == firstChild.length) {
+            int capacity = nodeCount * 2;
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            Arrays.fill(firstChild, nodeCount, capacity, -1);
+            nextSibling = Arrays.copyOf(nextSibling, capacity);
+            symbols = Arrays.copyOf(symbols, capacity);
+            fail = Arrays.copyOf(fail, capacity);
+            patternLength = Arrays.copyOf(patternLength, capacity);
+            outputLink = Arrays.copyOf(outputLink, capacity);
+        }
+        int node = nodeCount++;
+        symbols[node] = symbol;
+        nextSibling[node] = firstChild[parent];
+        firstChild[parent] = node;
+        putChild(parent, symbol, node);
+        return node;
+    }
+
+    /**
+     * Sets the failure and output links, breadth first so every node's links are set before its children's.
+     */
+    private void link() {
+        int[] queue = new int[nodeCount];
+        int head = 0;
+        int tail = 0;
+        outputLink[0] = -1;
+        for (int c = firstChild[0]; c >= 0; c = nextSibling[c]) {
+            fail[c] = 0;
+            outputLink[c] = -1;
+            queue[tail++] = c;
+        }
+        while (head < tail) {
+            int node = queue[head++];
+            for (int c = firstChild[node]; c >= 0; c = nextSibling[c]) {
+                int f = fail[node];
+                int next = child(f, symbols[c]);
+                while (next < 0 && f != 0) {
+                    f = fail[f];
+                    next = child(f, symbols[c]);
+                }
+                fail[c] = next < 0 ? 0 : next;
+                outputLink[c] = patternLength[fail[c]] > 0 ? fail[c] : outputLink[fail[c]];
+                queue[tail++] = c;
+            }
+        }
+    }
+
+    private int child(int node, char symbol) {
+        long key = (long) node << 16 | symbol;
+        int mask = childKeys.length - 1;
+        for (int slot = hash(key) & mask;; slot = (slot + 1) & mask) {
+            if (childNodes[slot] == 0) {
+                return -1;
+            }
+            if (childKeys[slot] == key) {
+                return childNodes[slot];
+            }
+        }
+    }
+
+    private void putChild(int node, char symbol, int child) {
+        if ((nodeCount + 1) * 2 > childKeys.length) {
+            long[] oldKeys = childKeys;
+            int[] oldNodes = childNodes;
+            childKeys = new long[oldKeys.length * 2];
+            childNodes = new int[oldKeys.length * 2];
+            for (int slot = 0; slot < oldKeys.length; slot++) {
+                if (oldNodes[slot] != 0) {
+                    insert(oldKeys[slot], oldNodes[slot]);
+                }
+            }
+        }
+        insert((long) node << 16 | symbol, child);
+    }
+
+    private void insert(long key, int child) {
+        int mask = childKeys.length - 1;
+        int slot = hash(key) & mask;
+        while (childNodes[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        childKeys[slot] = key;
+        childNodes[slot] = child;
+    }
+
+    private static int hash(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32);
+    }
+}
@@ -0,0 +1,35 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Java Flight Recorder event for one run of a pipeline stage, such as tokenizing a file or generating a passage. The
+ * events are only written while a recording is on, for example with -XX:StartFlightRecording, so they cost next to
+ * nothing otherwise. Made and committed by Metrics.begin and Metrics.end.
+ */
+@Name("transcripteditor.Stage")
+@Label("Pipeline Stage")
+@Category("Transcript Editor")
+@Description("One run of a stage of the cleaning, training or generation pipeline")
+@StackTrace(false)
+public class StageEvent extends jdk.jfr.Event {
+
+    @Label("Stage")
+    String stage;
+
+    @Label("Tokens")
+    @Description("Tokens read, learned or written by the stage")
+    long tokens;
+
+    @Label("Input Size")
+    @Description("Bytes of a file, or chars of a string, read by the stage")
+    @DataAmount
+    long bytes;
+
+    // which Metrics.Stage this is and when it started, for the metrics. Transient fields aren't recorded.
+    transient int stageIndex;
+    transient long startNanos;
+}
@@ -0,0 +1,173 @@
+/**
+ * Finds and removes the times in transcript lines, in one pass over each line and without regular expressions. The
+ * times recognized, where D is a digit:
+ *
+ * (DD:DD:DD) and (DD:DD), as in "Speaker 1 (00:01:02)";
+ * [DD:DD:DD] and [DD:DD];
+ * bare DD:DD:DD.DDD and DD:DD.DDD, with a comma or a period before the milliseconds, as in subtitle files;
+ * and ranges of two bare times joined by "-->", as in "00:00:01,000 --> 00:00:04,500".
+ *
+ * A bare time must not be in the middle of a word or a number, so "100:01:02.500" is left alone, as are times of day
+ * such as 10:30 with no milliseconds. The search only stops at colons, which String.indexOf finds quickly, so lines
+ * without times cost little more than a scan for ':'.
+ */
+public final class TimeStamps {
+
+    private TimeStamps() {
+    }
+
+    /**
+     * Removes the first time in a line and everything before it, which is usually the speaker, and every other time
+     * after it.
+     *
+     * @param line the line, without its line break
+     * @return the rest of the line followed by a line break, or the same String if it has no times
+     */
+    public static String strip(String line) {
+        StringBuilder sb = null;
+        // where the text after the last time removed starts
+        int kept = 0;
+        int from = 0;
+        int colon;
+        while ((colon = line.indexOf(':', from)) >= 0) {
+            // every time starts with two digits and a colon
+            int start = colon - 2;
+            int end = start >= 0 ? bracketed(line, start) : -1;
+            if (end >= 0) {
+                start--;
+            }
+            else if (start >= 0) {
+                end = bare(line, start);
+            }
+            if (end < 0) {
+                from = colon + 1;
+                continue;
+            }
+            if (sb == null) {
+                sb = new StringBuilder(line.length() - end + 1);
+            }
+            else {
+                sb.append(line, kept, start);
+            }
+            kept = end;
+            from = end;
+        }
+        if (sb == null) {
+            return line;
+        }
+        return sb.append(line, kept, line.length()).append('\n').toString();
+    }
+
+    /**
+     * Matches a time in parentheses or square brackets whose digits start at the given index.
+     *
+     * @return the index after the closing bracket, or -1 if there is no such time
+     */
+    private static int bracketed(String line, int start) {
+        if (start == 0) {
+            return -1;
+        }
+        char open = line.charAt(start - 1);
+        char close;
+        if (open == '(') {
+            close = ')';
+        }
+        else if (open == '[') {
+            close = ']';
+        }
+        else {
+            return -1;
+        }
+        int i = clock(line, start);
+        if (i < 0 || i == line.length() || line.charAt(i) != close) {
+            return -1;
+        }
+        return i + 1;
+    }
+
+    /**
+     * Matches a bare time, or a range of two, starting at the given index.
+     *
+     * @return the index after the time or the range, or -1 if there is none
+     */
+    private static int bare(String line, int start) {
+        if (start > 0 && isPartOfNumber(line.charAt(start - 1))) {
+            return -1;
+        }
+        int end = precise(line, start);
+        if (end < 0) {
+            return -1;
+        }
+        // "-->" and a second time, with any spaces around the arrow
+        int i = end;
+        while (i < line.length() && line.charAt(i) == ' ') {
+            i++;
+        }
+        if (line.startsWith("-->", i)) {
+            i += 3;
+            while (i < line.length() && line.charAt(i) == ' ') {
+                i++;
+            }
+            int second = precise(line, i);
+            if (second >= 0) {
+                end = second;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Matches DD:DD:DD or DD:DD, then a comma or period and three digits, not followed by more digits or a letter.
+     *
+     * @return the index after it, or -1
+     */
+    private static int precise(String line, int start) {
+        int i = clock(line, start);
+        if (i < 0 || i + 4 > line.length()) {
+            return -1;
+        }
+        char separator = line.charAt(i);
+        if ((separator != ',' && separator != '.') || !digits(line, i + 1, 3)) {
+            return -1;
+        }
+        i += 4;
+        if (i < line.length() && Character.isLetterOrDigit(line.charAt(i))) {
+            return -1;
+        }
+        return i;
+    }
+
+    /**
+     * Matches DD:DD:DD, or DD:DD if no third pair follows.
+     *
+     * @return the index after it, or -1
+     */
+    private static int clock(String line, int start) {
+        if (!digits(line, start, 2) || start + 5 > line.length() || line.charAt(start + 2) != ':'
+                || !digits(line, start + 3, 2)) {
+            return -1;
+        }
+        int i = start + 5;
+        if (i + 3 <= line.length() && line.charAt(i) == ':' && digits(line, i + 1, 2)) {
+            i += 3;
+        }
+        return i;
+    }
+
+    private static boolean digits(String line, int start, int count) {
+        if (start + count > line.length()) {
+            return false;
+        }
+        for (int i = start; i < start + count; i++) {
+            char c = line.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isPartOfNumber(char c) {
+        return Character.isLetterOrDigit(c) || c == ':' || c == '.' || c == ',';
+    }
+}
@@ -0,0 +1,269 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The tokens of a text, kept as spans of the text instead of Strings: the start, end and type of every token are
+ * stored in primitive arrays next to the original CharSequence, so tokenizing allocates nothing per token. A token's
+ * String is only made when token(i) is asked for it.
+ *
+ * The spans can be written out, appended to a StringBuilder, or replayed to any Tokenizer.TokenSink, so the output
+ * writers and the model trainers can use them as they are. The text must not change while the spans are in use.
+ *
+ * A large text can be tokenized on a fork-join pool. It is cut into chunks just after spaces: a space is never part of
+ * a token, the tokenizer never looks more than one char past a token, and its state after a space is the same as at
+ * the start of a text, so a fresh Tokenizer on each chunk finds exactly the tokens one Tokenizer finds on the whole.
+ */
+public class TokenSpans {
+
+    // texts shorter than two of these are tokenized on one thread
+    private static final int MIN_CHUNK_SIZE = 1 << 20;
+    // chunks per thread, so threads that finish early can take more
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private final CharSequence text;
+    private int[] starts;
+    private int[] ends;
+    private byte[] types;
+    private int size;
+
+    private TokenSpans(CharSequence text, int capacity) {
+        this.text = text;
+        starts = new int[capacity];
+        ends = new int[capacity];
+        types = new byte[capacity];
+    }
+
+    /**
+     * Tokenizes a whole text on the calling thread.
+     *
+     * @param text the text, which the spans point into
+     * @param numberSuffixes true to use the transcript number rules (ordinals and percents), false for plain numbers
+     * @return the spans of the tokens
+     */
+    public static TokenSpans tokenize(CharSequence text, boolean numberSuffixes) {
+        return tokenize(text, 0, text.length(), numberSuffixes);
+    }
+
+    /**
+     * Tokenizes a whole text on a fork-join pool, in chunks, and puts the chunks' spans back together in order. The
+     * spans are exactly the ones tokenize(text, numberSuffixes) finds. A text under a few MB, or one with no spaces to
+     * cut it at, is tokenized on the calling thread, as is any text when the pool has only one thread.
+     *
+     * @param text the text, which the spans point into
+     * @param numberSuffixes true to use the transcript number rules (ordinals and percents), false for plain numbers
+     * @param pool the pool that does the work
+     * @return the spans of the tokens
+     */
+    public static TokenSpans tokenize(CharSequence text, boolean numberSuffixes, ForkJoinPool pool) {
+        if (pool.getParallelism() == 1) {
+            return tokenize(text, numberSuffixes);
+        }
+        int[] bounds = chunkBounds(text, pool.getParallelism() * CHUNKS_PER_THREAD);
+        int chunks = bounds.length - 1;
+        if (chunks == 1) {
+            return tokenize(text, numberSuffixes);
+        }
+        TokenSpans[] parts = new TokenSpans[chunks];
+        pool.invoke(new TokenizeTask(text, numberSuffixes, bounds, 0, chunks, parts));
+
+        int size = 0;
+        for (TokenSpans part : parts) {
+            size += part.size;
+        }
+        TokenSpans spans = new TokenSpans(text, size);
+        for (TokenSpans part : parts) {
+            System.arraycopy(part.starts, 0, spans.starts, spans.size, part.size);
+            System.arraycopy(part.ends, 0, spans.ends, spans.size, part.size);
+            System.arraycopy(part.types, 0, spans.types, spans.size, part.size);
+            spans.size += part.size;
+        }
+        return spans;
+    }
+
+    /**
+     * Tokenizes text[from, to) with a fresh Tokenizer, as if it were the whole text.
+     */
+    private static TokenSpans tokenize(CharSequence text, int from, int to, boolean numberSuffixes) {
+        // about one token per six chars in English text
+        final TokenSpans spans = new TokenSpans(text, Math.max(16, (to - from) / 6));
+        new Tokenizer(numberSuffixes).scan(text, from, to, true, new Tokenizer.TokenSink() {
+            @Override
+            public void token(CharSequence scanned, int start, int end, int type) {
+                spans.add(start, end, type);
+            }
+        });
+        return spans;
+    }
+
+    /**
+     * Cuts a text into about the given number of chunks of about MIN_CHUNK_SIZE chars or more, each just after a space.
+     *
+     * @return the chunks' bounds: chunk i is [bounds[i], bounds[i + 1])
+     */
+    private static int[] chunkBounds(CharSequence text, int chunks) {
+        int length = text.length();
+        chunks = Math.max(1, Math.min(chunks, length / MIN_CHUNK_SIZE));
+        IntList bounds = new IntList();
+        bounds.add(0);
+        for (int i = 1; i < chunks; i++) {
+            int cut = Math.max((int) ((long) length * i / chunks), bounds.get(bounds.size() - 1));
+            while (cut < length && text.charAt(cut) != ' ') {
+                cut++;
+            }
+            if (cut + 1 >= length) {
+                break;
+            }
+            bounds.add(cut + 1);
+        }
+        bounds.add(length);
+        return bounds.toArray();
+    }
+
+    /**
+     * Tokenizes a range of chunks: one chunk directly, a longer range by splitting it in half.
+     */
+    private static class TokenizeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final CharSequence text;
+        private final boolean numberSuffixes;
+        private final int[] bounds;
+        private final int from;
+        private final int to;
+        private final TokenSpans[] parts;
+
+        TokenizeTask(CharSequence text, boolean numberSuffixes, int[] bounds, int from, int to, TokenSpans[] parts) {
+            this.text = text;
+            this.numberSuffixes = numberSuffixes;
+            this.bounds = bounds;
+            this.from = from;
+            this.to = to;
+            this.parts = parts;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                parts[from] = tokenize(text, bounds[from], bounds[to], numberSuffixes);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new TokenizeTask(text, numberSuffixes, bounds, from, middle, parts),
+                    new TokenizeTask(text, numberSuffixes, bounds, middle, to, parts));
+        }
+    }
+
+    private void add(int start, int end, int type) {
+        if (size == starts.length) {
+            int capacity = size * 2;
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            types = Arrays.copyOf(types, capacity);
+        }
+        starts[size] = start;
+        ends[size] = end;
+        types[size] = (byte) type;
+        size++;
+    }
+
+    /**
+     * @return the text the spans point into
+     */
+    public CharSequence text() {
+        return text;
+    }
+
+    /**
+     * @return the number of tokens
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index the token's position
+     * @return the index of the token's first char in the text
+     */
+    public int start(int index) {
+        return starts[index];
+    }
+
+    /**
+     * @param index the token's position
+     * @return the index after the token's last char in the text
+     */
+    public int end(int index) {
+        return ends[index];
+    }
+
+    /**
+     * @param index the token's position
+     * @return one of the Tokenizer token types
+     */
+    public int type(int index) {
+        return types[index];
+    }
+
+    /**
+     * Makes the String of a token.
+     *
+     * @param index the token's position
+     * @return the token, Tokenizer.PARAGRAPH_TEXT for paragraph breaks
+     */
+    public String token(int index) {
+        return Tokenizer.tokenText(text, starts[index], ends[index], types[index]);
+    }
+
+    /**
+     * Hands every token to a sink, in order, as the tokenizer would.
+     *
+     * @param sink receives the tokens
+     */
+    public void forEach(Tokenizer.TokenSink sink) {
+        for (int i = 0; i < size; i++) {
+            sink.token(text, starts[i], ends[i], types[i]);
+        }
+    }
+
+    /**
+     * Appends every token followed by a space, like TranscriptEditor.returnStuff.
+     *
+     * @param sb where to append them
+     */
+    public void appendTo(StringBuilder sb) {
+        for (int i = 0; i < size; i++) {
+            if (types[i] == Tokenizer.PARAGRAPH) {
+                sb.append(Tokenizer.PARAGRAPH_TEXT);
+            }
+            else {
+                sb.append(text, starts[i], ends[i]);
+            }
+            sb.append(' ');
+        }
+    }
+
+    /**
+     * Writes every token followed by a space, like TranscriptEditor.returnStuff.
+     *
+     * @param out where to write them. It is not flushed.
+     * @throws IOException if writing fails
+     */
+    public void writeTo(Writer out) throws IOException {
+        String string = text instanceof String ? (String) text : null;
+        for (int i = 0; i < size; i++) {
+            if (types[i] == Tokenizer.PARAGRAPH) {
+                out.write(Tokenizer.PARAGRAPH_TEXT);
+            }
+            else if (string != null) {
+                out.write(string, starts[i], ends[i] - starts[i]);
+            }
+            else {
+                out.append(text, starts[i], ends[i]);
+            }
+            out.write(' ');
+        }
+    }
+}
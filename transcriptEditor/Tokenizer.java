@@ -0,0 +1,469 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Single-pass tokenizer shared by the transcript editor and the passage generator. Windows line endings are
+ * normalized and runs of blank lines are collapsed while scanning, so the input is never copied before it is
+ * tokenized.
+ *
+ * The tokens are exactly the ones the old regular expressions produced:
+ * [a-zA-Z]+'?[a-zA-Z]+ : a word of length >=2 or a contraction of length >= 3
+ * [a-zA-Z] : single-character alphabetic words
+ * . ? ! : sentence-ending punctuation
+ * two or more newlines : a paragraph break, always returned as "\n\n"
+ * numbers : digits that are not part of a time stamp such as (01:02:03). In transcript mode a number may also carry an
+ * ordinal suffix (st, nd, rd, th) and a percent sign.
+ *
+ * A Tokenizer keeps a little state about the characters it has already passed, so input can be handed to
+ * {@link #scan} or {@link #feed} in pieces. Instances are not thread safe.
+ */
+public class Tokenizer {
+
+    /** Token type for words and single letters. */
+    public static final int WORD = 0;
+    /** Token type for plain numbers. */
+    public static final int NUMBER = 1;
+    /** Token type for numbers with an ordinal suffix, such as 21st. */
+    public static final int ORDINAL = 2;
+    /** Token type for numbers followed by a percent sign. */
+    public static final int PERCENT = 3;
+    /** Token type for sentence-ending punctuation. */
+    public static final int PUNCTUATION = 4;
+    /** Token type for paragraph breaks. */
+    public static final int PARAGRAPH = 5;
+
+    /**
+     * The text of every paragraph token, no matter which line endings the input used.
+     */
+    public static final String PARAGRAPH_TEXT = "\n\n";
+
+    /**
+     * Receives tokens as they are found. The text passed to a sink may be a buffer that is reused once the call
+     * returns, so sinks must copy out whatever they want to keep.
+     */
+    public interface TokenSink {
+        /**
+         * Called once per token, in input order. For {@link #PARAGRAPH} tokens the range covers the raw line breaks
+         * and the token text is {@link #PARAGRAPH_TEXT}.
+         *
+         * @param text the text being scanned
+         * @param start index of the first character of the token
+         * @param end index after the last character of the token
+         * @param type one of the token type constants
+         */
+        void token(CharSequence text, int start, int end, int type);
+    }
+
+    /**
+     * How many chars {@link #tokenize(Reader, TokenSink)} reads at a time.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    // returned by the matchers when the token could continue past the end of the available input
+    private static final int NEED_MORE = -2;
+    // returned by the number matcher when the digits do not form a token
+    private static final int FAIL = -1;
+    // returned by codePointAt when the input has ended
+    private static final int EOF = -1;
+
+    /**
+     * Whether numbers may carry ordinal and percent suffixes (the transcript rules).
+     */
+    private final boolean numberSuffixes;
+
+    // the last character passed, or 0 at the start of the input
+    private char previous;
+    // whether the last character passed counts as a word character for \b
+    private boolean wordBefore;
+    // whether a non-spacing mark here would be attached to a letter or digit (the \b rule for accents)
+    private boolean baseBefore;
+    // true while swallowing the extra line breaks after a paragraph token
+    private boolean inBreakRun;
+    // the start of a token that was cut off at the end of the last chunk given to feed
+    private final StringBuilder pending = new StringBuilder();
+
+    /**
+     * Creates a tokenizer.
+     *
+     * @param numberSuffixes true to use the transcript number rules (ordinals and percents), false for plain numbers
+     */
+    public Tokenizer(boolean numberSuffixes) {
+        this.numberSuffixes = numberSuffixes;
+    }
+
+    /**
+     * Tokenizes a whole string.
+     *
+     * @param input the text to tokenize
+     * @param numberSuffixes true to use the transcript number rules
+     * @return an ordered List of tokens
+     */
+    public static List<String> tokenize(CharSequence input, boolean numberSuffixes) {
+        final List<String> results = new ArrayList<String>();
+        new Tokenizer(numberSuffixes).scan(input, 0, input.length(), true, new TokenSink() {
+            @Override
+            public void token(CharSequence text, int start, int end, int type) {
+                results.add(tokenText(text, start, end, type));
+            }
+        });
+        return results;
+    }
+
+    /**
+     * Returns the text of a token reported to a {@link TokenSink}.
+     *
+     * @param text the scanned text
+     * @param start start of the token
+     * @param end end of the token
+     * @param type the token type
+     * @return the token as a String
+     */
+    public static String tokenText(CharSequence text, int start, int end, int type) {
+        if (type == PARAGRAPH) {
+            return PARAGRAPH_TEXT;
+        }
+        return text.subSequence(start, end).toString();
+    }
+
+    /**
+     * Forgets everything about previously scanned input.
+     */
+    public void reset() {
+        previous = 0;
+        wordBefore = false;
+        baseBefore = false;
+        inBreakRun = false;
+        pending.setLength(0);
+    }
+
+    /**
+     * Tokenizes everything a Reader provides, reading a buffer at a time. Memory use does not depend on the length of
+     * the input, only on the length of the longest token.
+     *
+     * @param in the input
+     * @param sink receives the tokens
+     * @throws IOException if reading fails
+     */
+    public void tokenize(Reader in, TokenSink sink) throws IOException {
+        char[] buffer = new char[BUFFER_SIZE];
+        CharBuffer view = CharBuffer.wrap(buffer);
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            view.clear();
+            view.limit(read);
+            feed(view, sink);
+        }
+        finish(sink);
+    }
+
+    /**
+     * Tokenizes the next piece of a longer input. Tokens that might continue into the next piece are held back until
+     * more input arrives or {@link #finish} is called.
+     *
+     * @param chunk the next piece of input
+     * @param sink receives the tokens
+     */
+    public void feed(CharSequence chunk, TokenSink sink) {
+        if (pending.length() == 0) {
+            // common case: scan the chunk where it is and only keep the unfinished tail
+            int used = scan(chunk, 0, chunk.length(), false, sink);
+            pending.append(chunk, used, chunk.length());
+        }
+        else {
+            pending.append(chunk);
+            int used = scan(pending, 0, pending.length(), false, sink);
+            pending.delete(0, used);
+        }
+    }
+
+    /**
+     * Ends an input given to {@link #feed}, reporting any token that was held back. The tokenizer can then be used for
+     * a new input.
+     *
+     * @param sink receives the tokens
+     */
+    public void finish(TokenSink sink) {
+        scan(pending, 0, pending.length(), true, sink);
+        reset();
+    }
+
+    /**
+     * Scans text[pos, limit) and reports every complete token to the sink. When eof is false the input is expected to
+     * continue after limit, and scanning stops in front of any token that might still grow; the caller should pass the
+     * text again starting at the returned index once more input is available.
+     *
+     * @param text the text to scan
+     * @param pos where to start scanning
+     * @param limit where the available text ends
+     * @param eof true if there is no more input after limit
+     * @param sink receives the tokens
+     * @return the index up to which the text has been consumed (always limit when eof is true)
+     */
+    public int scan(CharSequence text, int pos, int limit, boolean eof, TokenSink sink) {
+        // one if/else chain per char and no continue: with more back edges, C2 in JDK 17.0.9 crashed peeling the loop
+        while (pos < limit) {
+            char c = text.charAt(pos);
+
+            if (inBreakRun && c != '\n' && c != '\r') {
+                inBreakRun = false;
+            }
+
+            if (inBreakRun) {
+                pos++;
+            }
+            else if (isLetter(c)) {
+                int end = matchWord(text, pos, limit, eof);
+                if (end == NEED_MORE) {
+                    return pos;
+                }
+                sink.token(text, pos, end, WORD);
+                passedWordChar(text.charAt(end - 1));
+                pos = end;
+            }
+            else if (isDigit(c) && (wordBefore || previous == '(' || previous == ')' || previous == ':')) {
+                // inside a word or right after a time stamp separator, never the start of a number
+                passedWordChar(c);
+                pos++;
+            }
+            else if (isDigit(c)) {
+                int end = matchNumber(text, pos, limit, eof, sink);
+                if (end == NEED_MORE) {
+                    return pos;
+                }
+                if (end == FAIL) {
+                    passedWordChar(c);
+                    pos++;
+                }
+                else {
+                    char last = text.charAt(end - 1);
+                    if (last == '%') {
+                        passedOther(last);
+                    }
+                    else {
+                        passedWordChar(last);
+                    }
+                    pos = end;
+                }
+            }
+            else if (c == '.' || c == '?' || c == '!') {
+                sink.token(text, pos, pos + 1, PUNCTUATION);
+                passedOther(c);
+                pos++;
+            }
+            else if (c == '\n' || c == '\r') {
+                int next = pos + 1;
+                if (c == '\r') {
+                    if (next == limit && !eof) {
+                        return pos; // can't tell a lone \r from \r\n yet
+                    }
+                    if (next < limit && text.charAt(next) == '\n') {
+                        next++;
+                    }
+                }
+                if (next == limit && !eof) {
+                    return pos;
+                }
+                if (next < limit && (text.charAt(next) == '\n' || text.charAt(next) == '\r')) {
+                    sink.token(text, pos, next + 1, PARAGRAPH);
+                    inBreakRun = true;
+                    next++;
+                }
+                passedOther('\n');
+                pos = next;
+            }
+            else {
+                int cp = c;
+                int width = 1;
+                if (Character.isHighSurrogate(c)) {
+                    if (pos + 1 == limit && !eof) {
+                        return pos;
+                    }
+                    if (pos + 1 < limit && Character.isLowSurrogate(text.charAt(pos + 1))) {
+                        cp = Character.toCodePoint(c, text.charAt(pos + 1));
+                        width = 2;
+                    }
+                }
+                passedCodePoint(cp, text.charAt(pos + width - 1));
+                pos += width;
+            }
+        }
+        return pos;
+    }
+
+    /**
+     * Matches [a-zA-Z]+'?[a-zA-Z]+|[a-zA-Z] at start, which must be a letter.
+     *
+     * @return the end of the word, or NEED_MORE
+     */
+    private static int matchWord(CharSequence text, int start, int limit, boolean eof) {
+        int i = start + 1;
+        while (i < limit && isLetter(text.charAt(i))) {
+            i++;
+        }
+        if (i == limit) {
+            return eof ? i : NEED_MORE;
+        }
+        if (text.charAt(i) != '\'') {
+            return i;
+        }
+        // a contraction needs at least one letter after the apostrophe
+        if (i + 1 == limit) {
+            return eof ? i : NEED_MORE;
+        }
+        if (!isLetter(text.charAt(i + 1))) {
+            return i;
+        }
+        int j = i + 2;
+        while (j < limit && isLetter(text.charAt(j))) {
+            j++;
+        }
+        if (j == limit && !eof) {
+            return NEED_MORE;
+        }
+        return j;
+    }
+
+    /**
+     * Matches a number at start, which must be a digit that is allowed to begin a number. Reports the token to the
+     * sink when it matches.
+     *
+     * @return the end of the number, FAIL if the digits are not a token, or NEED_MORE
+     */
+    private int matchNumber(CharSequence text, int start, int limit, boolean eof, TokenSink sink) {
+        int i = start + 1;
+        while (i < limit && isDigit(text.charAt(i))) {
+            i++;
+        }
+        if (i == limit && !eof) {
+            return NEED_MORE;
+        }
+
+        int type = NUMBER;
+        int end = i;
+        if (numberSuffixes && i < limit && isOrdinalStart(text.charAt(i))) {
+            if (i + 1 == limit && !eof) {
+                return NEED_MORE;
+            }
+            if (i + 1 < limit && isOrdinal(text.charAt(i), text.charAt(i + 1))) {
+                type = ORDINAL;
+                end = i + 2;
+            }
+        }
+
+        if (numberSuffixes && end < limit && text.charAt(end) == '%') {
+            // the percent sign is only part of the token when a word character follows it (the \b after %)
+            int after = codePointAt(text, end + 1, limit, eof);
+            if (after == NEED_MORE) {
+                return NEED_MORE;
+            }
+            if (after != EOF && isWord(after)) {
+                type = PERCENT;
+                end++;
+            }
+            sink.token(text, start, end, type);
+            return end;
+        }
+
+        int next = codePointAt(text, end, limit, eof);
+        if (next == NEED_MORE) {
+            return NEED_MORE;
+        }
+        if (next != EOF) {
+            // \b after the number
+            if (isWord(next) || Character.getType(next) == Character.NON_SPACING_MARK) {
+                return FAIL;
+            }
+            // time stamp separators
+            if (next == ':' || (numberSuffixes && next == ')')) {
+                return FAIL;
+            }
+        }
+        sink.token(text, start, end, type);
+        return end;
+    }
+
+    /**
+     * Reads the code point at index, or returns EOF / NEED_MORE when the index is past the available input.
+     */
+    private static int codePointAt(CharSequence text, int index, int limit, boolean eof) {
+        if (index >= limit) {
+            return eof ? EOF : NEED_MORE;
+        }
+        char c = text.charAt(index);
+        if (Character.isHighSurrogate(c)) {
+            if (index + 1 < limit) {
+                char low = text.charAt(index + 1);
+                if (Character.isLowSurrogate(low)) {
+                    return Character.toCodePoint(c, low);
+                }
+            }
+            else if (!eof) {
+                return NEED_MORE;
+            }
+        }
+        return c;
+    }
+
+    /**
+     * Records that a letter or digit was passed.
+     */
+    private void passedWordChar(char c) {
+        previous = c;
+        wordBefore = true;
+        baseBefore = true;
+    }
+
+    /**
+     * Records that an ASCII character which is neither a letter nor a digit was passed.
+     */
+    private void passedOther(char c) {
+        previous = c;
+        wordBefore = false;
+        baseBefore = false;
+    }
+
+    /**
+     * Records that any other code point was passed.
+     *
+     * @param cp the code point
+     * @param last the last char of the code point
+     */
+    private void passedCodePoint(int cp, char last) {
+        previous = last;
+        if (Character.isBmpCodePoint(cp) && Character.getType(cp) == Character.NON_SPACING_MARK) {
+            // an accent is a word character if it sits on a letter or digit, and passes that on to further accents
+            wordBefore = baseBefore;
+        }
+        else {
+            wordBefore = isWord(cp);
+            // the base character search walks back one char at a time, so it never sees a supplementary letter
+            baseBefore = Character.isBmpCodePoint(cp) && Character.isLetterOrDigit(cp);
+        }
+    }
+
+    /**
+     * Whether a code point is a word character for \b.
+     */
+    private static boolean isWord(int cp) {
+        return cp == '_' || Character.isLetterOrDigit(cp);
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isOrdinalStart(char c) {
+        return c == 's' || c == 'n' || c == 'r' || c == 't';
+    }
+
+    private static boolean isOrdinal(char a, char b) {
+        return (a == 's' && b == 't') || (a == 'n' && b == 'd') || (a == 'r' && b == 'd') || (a == 't' && b == 'h');
+    }
+}
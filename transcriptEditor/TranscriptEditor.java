@@ -1,10 +1,16 @@
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Scanner;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
 
 public class TranscriptEditor {
     /**
@@ -14,56 +20,46 @@ public class TranscriptEditor {
      * @return an ordered List of tokens
      */
     public static Object[] tokenizeString(String input) {
-        List<String> results = new ArrayList<String>();
-
-        // fix issues if any input documents use Windows line endings
-        input = input.replaceAll("\\r\\n?", "\n");
-
-        // reduce any instance of two or more newlines to only two newlines
-        input = input.replaceAll("(\\n\\n+)", "\n\n");
-
-        // use regular expressions to tokenize string
-        // this regular expression has 6 options:
-        // [a-zA-Z]+'?[a-zA-z]+ : a word of length >=2 or a contraction of length >= 3
-        // [a-zA-z] : single-character alphanumeric words
-        // [.] : a period
-        // [?] : a question mark
-        // [!] : an exclamation point
-        // [\\n]{2,} : two newlines
-        //  \\d+(?:st|nd|rd|th)? matches numbers followed optionally by ordinal suffixes (st, nd, rd, th).
-        // \\d+ matches one or more digits.
-        // (?:st|nd|rd|th)? is a non-capturing group that matches the ordinal suffixes optionally.
-        // %? matches an optional percent sign %.
-        Pattern pattern = Pattern.compile("(?<![():])\\b\\d+(?:st|nd|rd|th)?%?\\b(?![:)])|[a-zA-Z]+'?[a-zA-Z]+|[a-zA-Z]|[.]|[?]|[!]|[\\n]{2,}");
-
-        Matcher matcher = pattern.matcher(input);
-        
-        // collect results
-        while (matcher.find()) {
-                results.add(matcher.group());
-        }
-        
-       Object[] result = results.toArray();
-        
-        return result;
-       
-        
+        // one pass over the input: line endings, blank lines and the token rules are all handled by the Tokenizer.
+        // tokens are words of length >=2 or contractions of length >= 3, single letters, . ? !, paragraph breaks,
+        // and numbers followed optionally by an ordinal suffix (st, nd, rd, th) and a percent sign.
+        // a long input is tokenized in chunks on the common pool, and the Strings are made there too
+        StageEvent event = Metrics.begin(Metrics.Stage.TOKENIZE);
+        TokenSpans spans = TokenSpans.tokenize(input, true, ForkJoinPool.commonPool());
+        Object[] tokens = new Object[spans.size()];
+        Arrays.parallelSetAll(tokens, spans::token);
+        Metrics.end(event, tokens.length, input.length());
+        return tokens;
     }
     
-    public static String readStringInput(Scanner scan) {
-        StringBuilder sb = new StringBuilder();
-        
+    /**
+     * Tokenizes a string like tokenizeString, but keeps the tokens as spans of the string, so no String is made per
+     * token. A long string is tokenized in chunks on the common fork-join pool.
+     * 
+     * @param input a string that needs to be tokenized
+     * @return the tokens, in order
+     */
+    public static TokenSpans tokenizeSpans(String input) {
+        StageEvent event = Metrics.begin(Metrics.Stage.TOKENIZE);
+        TokenSpans tokens = TokenSpans.tokenize(input, true, ForkJoinPool.commonPool());
+        Metrics.end(event, tokens.size(), input.length());
+        return tokens;
+    }
+    
+    /**
+     * Reads typed, pasted or piped text up to a line that is just -999, or to the end of the input. The text is read in
+     * bulk and keeps its line breaks, so paragraphs and per-line times survive.
+     * 
+     * @param input the console input
+     * @return the text
+     * @throws IOException if reading fails
+     */
+    public static String readStringInput(ConsoleInput input) throws IOException {
         System.out.println("Type in or past your text. Type -999 followed by a new line to stop!");
-        while (true) {
-            String input = scan.nextLine();
-            if (input.equals("-999")) {
-                break;
-            }
-            // Do something with the input if needed
-            sb.append(input);
-            
-        }
-        return sb.toString();
+        StageEvent event = Metrics.begin(Metrics.Stage.READ);
+        String text = input.readUntil(ConsoleInput.SENTINEL);
+        Metrics.end(event, 0, text.length());
+        return text;
     }
     
     
@@ -91,42 +87,160 @@ public class TranscriptEditor {
         return sb.toString();
     }
     
+    /**
+     * Joins the tokens into one string, each followed by a space, like returnStuff(Object[]), straight from the text
+     * they were found in.
+     * @param tokens - the token spans
+     * @return - String
+     */
+    public static String returnStuff(TokenSpans tokens) {
+        StringBuilder sb = new StringBuilder(tokens.text().length() + tokens.size());
+        tokens.appendTo(sb);
+        return sb.toString();
+    }
+    
     
-    public static String containsTimeFormat(String input) {
-        // Define the regular expression pattern for the time format (##:##:##)
-        Pattern pattern = Pattern.compile("\\(\\d{2}:\\d{2}:\\d{2}\\)");
-        Pattern pattern2 = Pattern.compile("\\(\\d{2}:\\d{2}\\)");
-        Matcher matcher = pattern.matcher(input);
-        Matcher matcher2 = pattern2.matcher(input);
-        // Check if the input string contains the time format
-        int index;
-        if (matcher.find()) {
-            index = matcher.end();
-            return input.substring(index) + "\n";
-        }
-        else if (matcher2.find()) {
-            index = matcher2.end();
-            return input.substring(index) + "\n";
+    /**
+     * Streaming version of cleaning a transcript. Reads the input a line at a time and writes the tokens in the same
+     * format as returnStuff(tokenizeString(removeTimes(input))), or returnStuff(tokenizeString(input)) for simple text.
+     * Memory use stays the same no matter how long the input is.
+     * 
+     * @param input where the transcript is read from
+     * @param output where the cleaned tokens are written. It is flushed, not closed.
+     * @param isTranscript true to remove the times (and everything before them) and the default speaker labels from
+     *            each line
+     * @return the number of tokens written
+     * @throws IOException if reading or writing fails
+     */
+    public static long cleanStream(Reader input, Writer output, boolean isTranscript) throws IOException {
+        return cleanStream(input, output, isTranscript, SpeakerLabels.defaults());
+    }
+    
+    /**
+     * Streaming version of cleaning a transcript, removing the given speaker labels from each line.
+     * 
+     * @param input where the transcript is read from
+     * @param output where the cleaned tokens are written. It is flushed, not closed.
+     * @param isTranscript true to remove the times and speaker labels from each line
+     * @param labels the speaker labels to remove
+     * @return the number of tokens written
+     * @throws IOException if reading or writing fails
+     */
+    public static long cleanStream(Reader input, Writer output, boolean isTranscript, SpeakerLabels labels)
+            throws IOException {
+        StageEvent event = Metrics.begin(Metrics.Stage.CLEAN);
+        Tokenizer tokenizer = new Tokenizer(true);
+        WriterSink sink = new WriterSink(output);
+        try {
+            if (isTranscript) {
+                // same lines as removeTimes gets from its split, since readLine ends lines at \n, \r or \r\n
+                BufferedReader lines = new BufferedReader(input);
+                String line;
+                while ((line = lines.readLine()) != null) {
+                    tokenizer.feed(labels.strip(containsTimeFormat(line)), sink);
+                }
+                tokenizer.finish(sink);
+            }
+            else {
+                tokenizer.tokenize(input, sink);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
-        return input;
+        output.flush();
+        Metrics.end(event, sink.count, 0);
+        return sink.count;
     }
     
+    /**
+     * Byte stream version of cleanStream. The input is decoded and the output encoded as UTF-8.
+     * 
+     * @param input where the transcript is read from
+     * @param output where the cleaned tokens are written. It is flushed, not closed.
+     * @param isTranscript true to remove the times from each line
+     * @return the number of tokens written
+     * @throws IOException if reading or writing fails
+     */
+    public static long cleanStream(InputStream input, OutputStream output, boolean isTranscript) throws IOException {
+        Reader reader = new InputStreamReader(input, StandardCharsets.UTF_8);
+        Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8);
+        return cleanStream(reader, writer, isTranscript);
+    }
     
-    public static String removeTimes(String input) {
-        List<String> results = new ArrayList<String>();
+    /**
+     * A token sink that writes each token followed by a space, like returnStuff, and counts them.
+     * IOExceptions are rethrown as UncheckedIOException.
+     */
+    private static class WriterSink implements Tokenizer.TokenSink {
+        private final Writer output;
+        private long count;
         
-        // fix issues if any input documents use Windows line endings
-        input = input.replaceAll("\\r\\n?", "\n");
-
-        // reduce any instance of two or more newlines to only two newlines
-        input = input.replaceAll("(\\n\\n+)", "\n\n");
+        WriterSink(Writer output) {
+            this.output = output;
+        }
         
-        String[] lines = input.split("\n");
-        StringBuilder sb = new StringBuilder();
-        for (String line : lines) {
-            line = containsTimeFormat(line);
-            sb.append(line);
+        @Override
+        public void token(CharSequence text, int start, int end, int type) {
+            try {
+                if (type == Tokenizer.PARAGRAPH) {
+                    output.write(Tokenizer.PARAGRAPH_TEXT);
+                }
+                else if (text instanceof String) {
+                    output.write((String) text, start, end - start);
+                }
+                else {
+                    output.append(text, start, end);
+                }
+                output.write(' ');
+                count++;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+    
+    
+    /**
+     * Removes the time, and everything before it, from a transcript line, and any other times after it. The times
+     * recognized are listed in TimeStamps.
+     * 
+     * @param input the line
+     * @return the rest of the line followed by a line break, or the line as it was if it has no time
+     */
+    public static String containsTimeFormat(String input) {
+        return TimeStamps.strip(input);
+    }
+    
+    
+    public static String removeTimes(String input) {
+        return removeTimes(input, SpeakerLabels.defaults());
+    }
+    
+    /**
+     * Removes the times, and everything before them, from each line of a transcript, and then the speaker labels.
+     * 
+     * @param input the transcript
+     * @param labels the speaker labels to remove
+     * @return the transcript without times and labels
+     */
+    public static String removeTimes(String input, SpeakerLabels labels) {
+        StageEvent event = Metrics.begin(Metrics.Stage.REMOVE_TIMES);
+        int inputLength = input.length();
+        StringBuilder sb = new StringBuilder(inputLength);
+        // lines end at \n, \r or \r\n. Blank lines add nothing, so runs of them needn't be collapsed first.
+        int start = 0;
+        while (start < inputLength) {
+            int end = start;
+            char c = 0;
+            while (end < inputLength && (c = input.charAt(end)) != '\n' && c != '\r') {
+                end++;
+            }
+            if (end > start) {
+                sb.append(labels.strip(containsTimeFormat(input.substring(start, end))));
+            }
+            start = end + (c == '\r' && end + 1 < inputLength && input.charAt(end + 1) == '\n' ? 2 : 1);
         }
+        Metrics.end(event, 0, inputLength);
         return sb.toString();
     }
     
@@ -1,3 +1,10 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.util.Scanner;
 
 
@@ -8,9 +15,14 @@ public class TranscriptEditorMain {
     
     public static void main(String[] args) {
         
+        // with arguments, run unattended over whole directories
+        if (args.length > 0) {
+            System.exit(BatchMode.run(args));
+        }
         
-        
-        Scanner scan = new Scanner(System.in);
+        // the Scanner asks the questions, and pasted or piped text is read in bulk from the same input
+        ConsoleInput console = new ConsoleInput(System.in);
+        Scanner scan = new Scanner(console);
         
         
         System.out.println("Hi! Welcome to my transcript editor/passage generator!\n");
@@ -31,12 +43,32 @@ public class TranscriptEditorMain {
         if (generateContent) {
             
             System.out.println("Ok, we'll generate some content!");
-        
-            int size = InputValidation.queryInt(scan, "How many words per key? That is, how many words in a row"
-                    + " should the model use to train? : ", "Enter a valid int.");
             
-            while (!(size > 0)) { // ensure size is not negative
-                size = InputValidation.queryInt(scan, "Enter a positive integer: ", "Enter a valid int.");
+            boolean loadModel = (InputValidation.queryIntFromOptions(INDICATOR, scan, 
+                    "Enter 1 if you want to load a saved model, and 0 if you want to train a new one: ", "Enter 0 or 1: ")== 1) ? true : false;
+            
+            int size = 0;
+            while (loadModel && size == 0) {
+                System.out.print("Enter the model's filename, or nothing to train a new model instead: ");
+                String filename = scan.nextLine().trim();
+                if (filename.isEmpty()) {
+                    loadModel = false;
+                    break;
+                }
+                try {
+                    size = PassageGenerator.loadModel(filename);
+                } catch (IOException e) {
+                    System.out.println("Couldn't load " + filename + ": " + e.getMessage());
+                }
+            }
+        
+            if (!loadModel) {
+                size = InputValidation.queryInt(scan, "How many words per key? That is, how many words in a row"
+                        + " should the model use to train? : ", "Enter a valid int.");
+                
+                while (!(size > 0)) { // ensure size is not negative
+                    size = InputValidation.queryInt(scan, "Enter a positive integer: ", "Enter a valid int.");
+                }
             }
             int length = InputValidation.queryInt(scan, "How many words minimum? (more than words per key): ", 
             "Enter a valid int");
@@ -46,27 +78,68 @@ public class TranscriptEditorMain {
                         "Enter a valid int");
             }
             
-            if (files) {
-                PassageGenerator.getFiles(scan, size);
-            }
-            else {
-                PassageGenerator.getStrings(scan, size);
-            }
-            // get novel in style of writer.
-            String passage = PassageGenerator.generatePassage(length, size);
-            if (passage == null) {
-                System.out.println("Oops, your passage couldn't be generated!!");
+            if (!loadModel) {
+                if (files) {
+                    PassageGenerator.getFiles(scan, size);
+                }
+                else {
+                    try {
+                        PassageGenerator.getStrings(console, size);
+                    } catch (IOException e) {
+                        System.out.println("Couldn't read the text: " + e.getMessage());
+                    }
+                }
+                
+                // save the model so the next run can skip training
+                System.out.print("Enter a filename to save the model to, or -999 to skip: ");
+                String filename = scan.nextLine();
+                if (!filename.equals("-999") && PassageGenerator.getModel() != null) {
+                    try {
+                        PassageGenerator.saveModel(filename);
+                    } catch (IOException e) {
+                        System.out.println("Couldn't save the model: " + e.getMessage());
+                    }
+                }
             }
-            else {
-                System.out.println(passage);
+            // get novel in style of writer, printed as it is generated so long passages show up right away.
+            try {
+                Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+                if (PassageGenerator.writePassage(length, out)) {
+                    System.out.println();
+                }
+                else {
+                    System.out.println("Oops, your passage couldn't be generated!!");
+                }
+            } catch (IOException e) {
+                System.out.println("Couldn't print the passage: " + e.getMessage());
             }
         
         }
         
+        else if (files) {
+            // stream the file straight to the console, so long transcripts never have to fit in memory
+            System.out.print("Enter filename: ");
+            String filename = scan.nextLine();
+            System.out.println("Cleaning input...");
+            try (Reader in = CaptionReader.open(Paths.get(filename))) {
+                Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+                TranscriptEditor.cleanStream(in, out, isTranscript);
+                System.out.println();
+            } catch (IOException e) {
+                System.out.println("Couldn't read " + filename + ": " + e.getMessage());
+            }
+        }
+        
         else {
             System.out.println("Cleaning input...");
             
-            String current = TranscriptEditor.readStringInput(scan);
+            String current;
+            try {
+                current = TranscriptEditor.readStringInput(console);
+            } catch (IOException e) {
+                System.out.println("Couldn't read the text: " + e.getMessage());
+                current = "";
+            }
             
             if (isTranscript) {
                 current  = TranscriptEditor.removeTimes(current);
@@ -76,7 +149,7 @@ public class TranscriptEditorMain {
                 
             }
             
-            Object[] tokenizedInput = TranscriptEditor.tokenizeString(current);
+            TokenSpans tokenizedInput = TranscriptEditor.tokenizeSpans(current);
             System.out.println("Here's your cleaned Transcript!");
             System.out.println(TranscriptEditor.returnStuff(tokenizedInput));
             
@@ -0,0 +1,148 @@
+import java.util.Arrays;
+
+/**
+ * Maps every distinct token to a small int id. Ids are handed out in the order tokens are first seen, starting at 0.
+ * Lookups take any CharSequence range, so tokens can be interned straight from the text being tokenized and a String
+ * is only made the first time a token is seen.
+ */
+public class Vocabulary {
+
+    private static final int STRING_OVERHEAD = 40;
+
+    // token text by id
+    private String[] words = new String[64];
+    private int size;
+    // open addressing hash table holding id + 1 in each used slot, 0 in empty ones
+    private int[] table = new int[128];
+    // rough heap size of the token Strings
+    private long textBytes;
+
+    /**
+     * Gets the id of a token, adding it to the vocabulary if it is new.
+     *
+     * @param text text containing the token
+     * @param start start of the token
+     * @param end end of the token
+     * @return the token's id
+     */
+    public int id(CharSequence text, int start, int end) {
+        int hash = hash(text, start, end);
+        int mask = table.length - 1;
+        for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+            int entry = table[slot];
+            if (entry == 0) {
+                return add(text.subSequence(start, end).toString(), slot);
+            }
+            if (matches(words[entry - 1], text, start, end)) {
+                return entry - 1;
+            }
+        }
+    }
+
+    /**
+     * Gets the id of a token, adding it to the vocabulary if it is new.
+     *
+     * @param word the token
+     * @return the token's id
+     */
+    public int id(String word) {
+        return id(word, 0, word.length());
+    }
+
+    /**
+     * Looks up a token without adding it.
+     *
+     * @param word the token
+     * @return the token's id, or -1 if it isn't in the vocabulary
+     */
+    public int find(CharSequence word) {
+        int hash = hash(word, 0, word.length());
+        int mask = table.length - 1;
+        for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+            int entry = table[slot];
+            if (entry == 0) {
+                return -1;
+            }
+            if (matches(words[entry - 1], word, 0, word.length())) {
+                return entry - 1;
+            }
+        }
+    }
+
+    /**
+     * Gets the text of a token.
+     *
+     * @param id the token's id
+     * @return the token
+     */
+    public String word(int id) {
+        return words[id];
+    }
+
+    /**
+     * @return the number of distinct tokens
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return roughly how many bytes the vocabulary takes on the heap
+     */
+    public long memoryBytes() {
+        return words.length * 4L + table.length * 4L + textBytes;
+    }
+
+    /**
+     * Adds a new word in the given empty slot, growing the table when it gets half full.
+     */
+    private int add(String word, int slot) {
+        if (size == words.length) {
+            words = Arrays.copyOf(words, size * 2);
+        }
+        int id = size++;
+        words[id] = word;
+        // object header, hash and length fields of the String and of its byte array, and one byte per char
+        textBytes += STRING_OVERHEAD + word.length();
+        table[slot] = id + 1;
+        if (size * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+        return id;
+    }
+
+    private void rehash(int capacity) {
+        table = new int[capacity];
+        int mask = capacity - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hash(words[id], 0, words[id].length()) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = id + 1;
+        }
+    }
+
+    /**
+     * String.hashCode of the range, with the bits spread so neighbouring hashes don't cluster.
+     */
+    private static int hash(CharSequence text, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + text.charAt(i);
+        }
+        return h ^ (h >>> 16) ^ (h >>> 7);
+    }
+
+    private static boolean matches(String word, CharSequence text, int start, int end) {
+        if (word.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < word.length(); i++) {
+            if (word.charAt(i) != text.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
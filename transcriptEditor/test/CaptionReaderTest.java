@@ -0,0 +1,89 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks that CaptionReader returns just the spoken text of SubRip and WebVTT files.
+ */
+class CaptionReaderTest {
+
+    private static final String SRT = "1\r\n00:00:01,000 --> 00:00:04,500\r\n<i>Hello</i> there,\r\nfriend.\r\n\r\n"
+            + "2\r\n00:00:05,000 --> 00:00:06,000\r\n{\\an8}Tom &amp; Jerry &lt;3\r\n";
+
+    private static final String VTT = "\uFEFFWEBVTT - title\n\nNOTE a comment\nthat spans lines\n\n"
+            + "STYLE\n::cue { color: red }\n\nintro\n00:01.000 --> 00:04.000 align:start\n"
+            + "<v Speaker 1>Hi <b>all</b></v>\n\n"
+            + "00:05.000 --> 00:06.000\nBye &#233;\n";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsTheTextOfSubRipCues() throws IOException {
+        assertEquals("Hello there, \nfriend. \nTom & Jerry <3 \n", read(SRT, CaptionReader.Format.SRT, 4096));
+    }
+
+    @Test
+    void readsTheTextOfWebVttCues() throws IOException {
+        assertEquals("Hi all \nBye \u00E9 \n", read(VTT, CaptionReader.Format.VTT, 4096));
+    }
+
+    @Test
+    void readsLongFilesInSmallPieces() throws IOException {
+        StringBuilder file = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 1; i <= 20_000; i++) {
+            file.append(i).append("\n00:00:01,000 --> 00:00:02,000\nline <i>").append(i).append("</i>\n\n");
+            expected.append("line ").append(i).append(" \n");
+        }
+        for (int piece : new int[] {1, 7, 100_000}) {
+            assertEquals(expected.toString(), read(file.toString(), CaptionReader.Format.SRT, piece));
+        }
+    }
+
+    @Test
+    void detectsTheFormat() throws IOException {
+        assertEquals(CaptionReader.Format.SRT, CaptionReader.detect(SRT));
+        assertEquals(CaptionReader.Format.SRT, CaptionReader.detect("00:00:01,000 --> 00:00:02,000\nx"));
+        assertEquals(CaptionReader.Format.VTT, CaptionReader.detect(VTT));
+        assertNull(CaptionReader.detect("WEBVTTX"));
+        assertNull(CaptionReader.detect("Hello 1 --> 2"));
+        assertNull(CaptionReader.detect(""));
+
+        Path captions = dir.resolve("captions.srt");
+        Files.write(captions, SRT.getBytes(StandardCharsets.UTF_8));
+        try (Reader reader = CaptionReader.open(captions)) {
+            assertEquals("Hello there, \nfriend. \nTom & Jerry <3 \n", drain(reader, 4096));
+        }
+        Path text = dir.resolve("notes.txt");
+        Files.write(text, "Hello, 1 --> 2.\n\nplain".getBytes(StandardCharsets.UTF_8));
+        try (Reader reader = CaptionReader.open(text)) {
+            assertEquals("Hello, 1 --> 2.\n\nplain", drain(reader, 4096));
+        }
+    }
+
+    private static String read(String file, CaptionReader.Format format, int piece) throws IOException {
+        try (Reader reader = new CaptionReader(new StringReader(file), format)) {
+            return drain(reader, piece);
+        }
+    }
+
+    private static String drain(Reader reader, int piece) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        char[] buffer = new char[piece];
+        int read;
+        while ((read = reader.read(buffer, 0, piece)) >= 0) {
+            sb.append(buffer, 0, read);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,116 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks which documents and paragraphs Fingerprints skips as copies of text it has seen.
+ */
+class FingerprintsTest {
+
+    @TempDir
+    Path dir;
+
+    private final Vocabulary vocabulary = new Vocabulary();
+
+    @Test
+    void skipsDocumentsSeenBefore() {
+        Fingerprints fingerprints = new Fingerprints();
+        Random random = new Random(1);
+        String text = paragraph(random, 30) + "\n\n" + paragraph(random, 25);
+        IntList tokens = tokens(text);
+        assertEquals(tokens.size(), fingerprints.filter(tokens, vocabulary).size());
+        assertEquals(0, fingerprints.filter(tokens(text), vocabulary).size());
+        assertEquals(1, fingerprints.skippedDocuments());
+        assertEquals(tokens.size(), fingerprints.skippedTokens());
+    }
+
+    @Test
+    void skipsCopiedAndNearlyCopiedParagraphs() {
+        Fingerprints fingerprints = new Fingerprints();
+        Random random = new Random(2);
+        List<String> first = words(random, 30);
+        List<String> second = words(random, 30);
+        claim(fingerprints, String.join(" ", first) + ".\n\n" + String.join(" ", second) + ".");
+
+        // the same words with different case and punctuation, then with one word changed, added or dropped
+        List<String> changed = new ArrayList<String>(first);
+        changed.set(15, "changed");
+        List<String> added = new ArrayList<String>(second);
+        added.add(10, "added");
+        List<String> dropped = new ArrayList<String>(first);
+        dropped.remove(20);
+        String text = String.join(" ", second).toUpperCase() + "?\n\n" + String.join(" ", changed) + ".\n\n"
+                + String.join(" ", added) + "!\n\n" + String.join(" ", dropped) + ".\n\n" + paragraph(random, 30);
+        assertArrayEquals(new boolean[] {false, false, false, false, true}, claim(fingerprints, text));
+        assertEquals(4, fingerprints.skippedParagraphs());
+    }
+
+    @Test
+    void keepsQuotesAndShortParagraphs() {
+        Fingerprints fingerprints = new Fingerprints();
+        Random random = new Random(3);
+        List<String> original = words(random, 30);
+        claim(fingerprints, String.join(" ", original) + ".\n\nThank you very much for that.");
+
+        // a paragraph that quotes six words of the first, and a short one that repeats
+        String quote = String.join(" ", original.subList(5, 11)) + " " + paragraph(random, 24);
+        String text = quote + ".\n\nThank you very much for that.";
+        assertArrayEquals(new boolean[] {true, true}, claim(fingerprints, text));
+        assertEquals(0, fingerprints.skippedParagraphs());
+    }
+
+    @Test
+    void loadsWhatWasSaved() throws IOException {
+        Fingerprints fingerprints = new Fingerprints();
+        Random random = new Random(4);
+        String text = paragraph(random, 30) + "\n\n" + paragraph(random, 30);
+        claim(fingerprints, text);
+        Path file = dir.resolve("seen.bin");
+        fingerprints.save(file);
+
+        Fingerprints loaded = Fingerprints.load(file);
+        assertEquals(fingerprints.size(), loaded.size());
+        assertNull(claim(loaded, text));
+    }
+
+    private boolean[] claim(Fingerprints fingerprints, String text) {
+        return fingerprints.claim(Fingerprints.fingerprint(tokens(text), vocabulary));
+    }
+
+    private IntList tokens(String text) {
+        IntList tokens = new IntList();
+        for (String token : PassageGenerator.tokenizeString(text)) {
+            tokens.add(vocabulary.id(token));
+        }
+        return tokens;
+    }
+
+    private static String paragraph(Random random, int count) {
+        return String.join(" ", words(random, count));
+    }
+
+    /**
+     * Makes random words of three to seven letters, so paragraphs made of them share no runs of words by chance.
+     */
+    private static List<String> words(Random random, int count) {
+        List<String> words = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            StringBuilder sb = new StringBuilder();
+            int length = 3 + random.nextInt(5);
+            for (int c = 0; c < length; c++) {
+                sb.append((char) ('a' + random.nextInt(26)));
+            }
+            words.add(sb.toString());
+        }
+        return words;
+    }
+}
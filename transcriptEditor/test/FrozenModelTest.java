@@ -0,0 +1,100 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks that a model saved as a snapshot and mapped back in is the model that was saved.
+ */
+class FrozenModelTest {
+
+    private static final String TEXT = "The cat sat on the mat. The dog sat on the cat! Did the cat run? "
+            + "The dog ran under the table, and the cat sat on it. It was 3rd in line; café au lait.\n\n"
+            + "The mat was red. The table was red? The dog was on the mat.";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void loadsWhatWasSaved() throws IOException {
+        for (int k = 1; k <= 3; k++) {
+            NGramModel model = train(k);
+            Path file = dir.resolve("model" + k + ".bin");
+            model.freeze().save(file);
+            FrozenModel loaded = FrozenModel.load(file);
+            assertSameModel(model, loaded);
+            assertSameModel(model, model.offHeap());
+            assertSameModel(model, loaded.offHeap());
+        }
+    }
+
+    @Test
+    void rejectsFilesThatAreNotSnapshots() throws IOException {
+        Path file = dir.resolve("notes.txt");
+        Files.write(file, "not a model, but long enough to hold a header".getBytes(StandardCharsets.UTF_8));
+        assertThrows(IOException.class, () -> FrozenModel.load(file));
+
+        Path truncated = dir.resolve("truncated.bin");
+        train(2).freeze().save(truncated);
+        byte[] bytes = Files.readAllBytes(truncated);
+        Files.write(truncated, Arrays.copyOf(bytes, bytes.length / 2));
+        assertThrows(IOException.class, () -> FrozenModel.load(truncated));
+    }
+
+    private static NGramModel train(int k) {
+        NGramModel model = new NGramModel(k);
+        PassageGenerator.learnFromTokens(model, tokens(model, TEXT), k);
+        return model;
+    }
+
+    private static IntList tokens(NGramModel model, String text) {
+        IntList tokens = new IntList();
+        for (String token : PassageGenerator.tokenizeString(text)) {
+            tokens.add(model.vocabulary().id(token));
+        }
+        return tokens;
+    }
+
+    /**
+     * Compares the tables, and checks that the same random numbers pick the same states from both models.
+     */
+    private static void assertSameModel(PassageModel expected, PassageModel actual) {
+        assertEquals(expected.k(), actual.k());
+        assertEquals(expected.stateCount(), actual.stateCount(), "state count");
+        assertEquals(expected.vocabularySize(), actual.vocabularySize(), "vocabulary size");
+        for (int id = 0; id < expected.vocabularySize(); id++) {
+            assertEquals(expected.word(id), actual.word(id));
+        }
+        for (int state = 0; state < expected.stateCount(); state++) {
+            for (int i = 0; i < expected.k(); i++) {
+                assertEquals(expected.token(state, i), actual.token(state, i));
+            }
+            assertEquals(expected.distanceToEnd(state), actual.distanceToEnd(state), "distance of " + state);
+            assertEquals(expected.successorCount(state), actual.successorCount(state), "successors of " + state);
+            for (int i = 0; i < expected.successorCount(state); i++) {
+                assertEquals(expected.successor(state, i), actual.successor(state, i));
+                assertEquals(expected.successorWeight(state, i), actual.successorWeight(state, i));
+            }
+            if (expected.successorCount(state) > 0) {
+                SplittableRandom first = new SplittableRandom(state);
+                SplittableRandom second = new SplittableRandom(state);
+                for (int i = 0; i < 100; i++) {
+                    assertEquals(expected.sample(state, first), actual.sample(state, second));
+                }
+            }
+        }
+        SplittableRandom first = new SplittableRandom(7);
+        SplittableRandom second = new SplittableRandom(7);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(expected.sampleStart(first), actual.sampleStart(second));
+        }
+    }
+}
@@ -0,0 +1,63 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that NGramModel's alias tables pick each successor as often as it was seen.
+ */
+class NGramModelTest {
+
+    private static final int SAMPLES = 1_000_000;
+
+    @Test
+    void samplesSuccessorsInProportionToTheirCounts() {
+        NGramModel model = new NGramModel(1);
+        int from = state(model, "a");
+        int[] weights = {1, 2, 3, 10, 84};
+        int[] successors = new int[weights.length];
+        for (int i = 0; i < weights.length; i++) {
+            successors[i] = state(model, "w" + (char) ('a' + i));
+            model.addTransitions(from, successors[i], weights[i]);
+        }
+        assertFrequencies(model, from, successors, weights);
+
+        // seeing known transitions again only rebuilds the tables they come from
+        model.addTransitions(from, successors[0], 99);
+        weights[0] += 99;
+        assertFrequencies(model, from, successors, weights);
+    }
+
+    @Test
+    void alwaysPicksTheOnlySuccessor() {
+        NGramModel model = new NGramModel(1);
+        int from = state(model, "a");
+        int to = state(model, "b");
+        model.addTransitions(from, to, 7);
+        SplittableRandom random = new SplittableRandom(2);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(to, model.sample(from, random));
+        }
+    }
+
+    private static int state(NGramModel model, String word) {
+        return model.state(new int[] {model.vocabulary().id(word)}, 0);
+    }
+
+    private static void assertFrequencies(NGramModel model, int from, int[] successors, int[] weights) {
+        int total = 0;
+        for (int weight : weights) {
+            total += weight;
+        }
+        int[] seen = new int[model.stateCount()];
+        SplittableRandom random = new SplittableRandom(1);
+        for (int i = 0; i < SAMPLES; i++) {
+            seen[model.sample(from, random)]++;
+        }
+        for (int i = 0; i < successors.length; i++) {
+            double expected = (double) weights[i] / total;
+            assertEquals(expected, (double) seen[successors[i]] / SAMPLES, 0.005, "successor " + i);
+        }
+    }
+}
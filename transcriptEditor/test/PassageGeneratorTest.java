@@ -0,0 +1,109 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks that PassageGenerator's parallel work gives the same results as doing it on one thread.
+ */
+class PassageGeneratorTest {
+
+    private static final String[] WORDS = {
+        "the", "a", "cat", "dog", "sat", "ran", "on", "under", "mat", "table", "quickly", "and", "it", "was", "red"
+    };
+
+    @TempDir
+    Path dir;
+
+    @AfterEach
+    void dropModel() {
+        PassageGenerator.setModelNull();
+    }
+
+    @Test
+    void parallelTrainingMatchesOneFileAtATime() throws IOException {
+        List<String> files = writeFiles(23, new Random(5));
+        for (int k = 1; k <= 3; k++) {
+            PassageGenerator.setModelNull();
+            for (String file : files) {
+                PassageGenerator.learnFromFile(file, k);
+            }
+            NGramModel sequential = PassageGenerator.getModel();
+
+            PassageGenerator.setModelNull();
+            ForkJoinPool pool = new ForkJoinPool(4);
+            try {
+                PassageGenerator.learnFromFiles(files, k, pool);
+            } finally {
+                pool.shutdown();
+            }
+            assertSameModel(sequential, PassageGenerator.getModel());
+        }
+    }
+
+    @Test
+    void sameSeedGivesTheSamePassagesOnAnyPool() throws IOException {
+        PassageGenerator.learnFromFiles(writeFiles(10, new Random(6)), 2);
+        NGramModel model = PassageGenerator.getModel();
+        List<String> expected = new ArrayList<String>();
+        SplittableRandom master = new SplittableRandom(42);
+        for (int i = 0; i < 50; i++) {
+            expected.add(PassageGenerator.generatePassage(model, 60, master.split()));
+        }
+        for (int threads : new int[] {1, 3, 8}) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                assertEquals(expected, PassageGenerator.generatePassages(model, 50, 60, 42, pool),
+                        threads + " threads");
+                assertEquals(expected, PassageGenerator.generatePassages(model.freeze(), 50, 60, 42, pool));
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    private List<String> writeFiles(int count, Random random) throws IOException {
+        List<String> files = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            StringBuilder sb = new StringBuilder();
+            int sentences = 1 + random.nextInt(40);
+            for (int s = 0; s < sentences; s++) {
+                int words = 1 + random.nextInt(12);
+                for (int w = 0; w < words; w++) {
+                    sb.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+                }
+                sb.append(random.nextBoolean() ? ".\n" : "?\n\n");
+            }
+            Path file = dir.resolve("file" + i + ".txt");
+            Files.write(file, sb.toString().getBytes(StandardCharsets.UTF_8));
+            files.add(file.toString());
+        }
+        return files;
+    }
+
+    private static void assertSameModel(PassageModel expected, PassageModel actual) {
+        assertEquals(expected.stateCount(), actual.stateCount(), "state count");
+        assertEquals(expected.vocabularySize(), actual.vocabularySize(), "vocabulary size");
+        for (int state = 0; state < expected.stateCount(); state++) {
+            for (int i = 0; i < expected.k(); i++) {
+                assertEquals(expected.word(expected.token(state, i)), actual.word(actual.token(state, i)));
+            }
+            assertEquals(expected.successorCount(state), actual.successorCount(state), "successors of " + state);
+            for (int i = 0; i < expected.successorCount(state); i++) {
+                assertEquals(expected.successor(state, i), actual.successor(state, i));
+                assertEquals(expected.successorWeight(state, i), actual.successorWeight(state, i));
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The regular expression tokenizers that Tokenizer replaced, kept as they were in TranscriptEditor.tokenizeString
+ * (transcript mode) and PassageGenerator.tokenizeString (plain mode), so the tests can check the two still agree.
+ */
+final class RegexTokenizer {
+
+    private static final Pattern TRANSCRIPT = Pattern.compile(
+            "(?<![():])\\b\\d+(?:st|nd|rd|th)?%?\\b(?![:)])|[a-zA-Z]+'?[a-zA-Z]+|[a-zA-Z]|[.]|[?]|[!]|[\\n]{2,}");
+    private static final Pattern PLAIN = Pattern.compile(
+            "(?<![():])\\b\\d+\\b(?![:])|[a-zA-Z]+'?[a-zA-Z]+|[a-zA-Z]|[.]|[?]|[!]|[\\n]{2,}");
+
+    private RegexTokenizer() {
+    }
+
+    /**
+     * @param input the text to tokenize
+     * @param numberSuffixes true for the transcript pattern, false for the plain one
+     * @return an ordered List of tokens
+     */
+    static List<String> tokenize(String input, boolean numberSuffixes) {
+        List<String> results = new ArrayList<String>();
+
+        // fix issues if any input documents use Windows line endings
+        input = input.replaceAll("\\r\\n?", "\n");
+
+        // reduce any instance of two or more newlines to only two newlines
+        input = input.replaceAll("(\\n\\n+)", "\n\n");
+
+        Matcher matcher = (numberSuffixes ? TRANSCRIPT : PLAIN).matcher(input);
+        while (matcher.find()) {
+            results.add(matcher.group());
+        }
+        return results;
+    }
+}
@@ -0,0 +1,50 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks which labels SpeakerLabels removes, and which text it leaves alone.
+ */
+class SpeakerLabelsTest {
+
+    @Test
+    void removesTheDefaultLabels() {
+        SpeakerLabels labels = SpeakerLabels.defaults();
+        assertEquals(" Hello there.", labels.strip("Speaker 1: Hello there."));
+        assertEquals("  Hi", labels.strip("Speaker 12 [00:01:02] Hi"));
+        assertEquals("at  and ", labels.strip("at [1:02] and [10:11:12]"));
+    }
+
+    @Test
+    void leavesLabelsInsideWordsAlone() {
+        SpeakerLabels labels = SpeakerLabels.defaults();
+        String[] lines = {"Speakers 1", "XSpeaker 2: hi", "Speaker 2x", "Speaker 3Speaker 4: x", "speaker 1: hi", ""};
+        for (String line : lines) {
+            assertSame(line, labels.strip(line), line);
+        }
+    }
+
+    @Test
+    void removesNamesFollowedByAColon() {
+        SpeakerLabels labels = new SpeakerLabels(Collections.<String>emptyList(),
+                Arrays.asList("SEN. SMITH", "SMITH", "Agent 9", ""));
+        // the longest of the labels ending at the same place wins
+        assertEquals(" Thank you.  yes", labels.strip("SEN. SMITH: Thank you. SMITH: yes"));
+        assertEquals("MR. ok", labels.strip("MR. SMITH:ok"));
+        // the digits of a name match any number
+        assertEquals(" hi", labels.strip("Agent 12: hi"));
+        assertEquals("SMITHS: no", labels.strip("SMITHS: no"));
+        assertEquals("SMITH says", labels.strip("SMITH says"));
+    }
+
+    @Test
+    void keepsLinesWhenThereAreNoLabels() {
+        SpeakerLabels labels = new SpeakerLabels(Collections.<String>emptyList(), Collections.<String>emptyList());
+        String line = "Speaker 1: Hello.";
+        assertSame(line, labels.strip(line));
+    }
+}
@@ -0,0 +1,34 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks which times TimeStamps removes from transcript lines, and which text it leaves alone.
+ */
+class TimeStampsTest {
+
+    @Test
+    void removesTheSpeakerAndEveryTime() {
+        assertEquals(" I don't know.\n", TimeStamps.strip("Speaker 1 (00:01:02) I don't know."));
+        assertEquals(" Yes  no\n", TimeStamps.strip("Speaker 2 [01:02] Yes [00:03:04] no"));
+        assertEquals(" Hello\n", TimeStamps.strip("00:01.500 Hello"));
+        assertEquals(" b\n", TimeStamps.strip("a1 00:01:02.500 b"));
+    }
+
+    @Test
+    void removesSubtitleRanges() {
+        assertEquals("\n", TimeStamps.strip("00:00:01,000 --> 00:00:04,500"));
+        assertEquals(" text\n", TimeStamps.strip("00:00:01.000-->00:00:04.500 text"));
+    }
+
+    @Test
+    void leavesOtherNumbersAlone() {
+        String[] lines = {
+            "at 10:30 we met", "100:01:02.500 x", "12:34:56.789x", "(1:02) x", "[00:01:02 x", "no times here", "", ":"
+        };
+        for (String line : lines) {
+            assertSame(line, TimeStamps.strip(line), line);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that TokenSpans finds the same tokens as Tokenizer, and that tokenizing in parallel chunks finds the same
+ * spans as tokenizing on one thread.
+ */
+class TokenSpansTest {
+
+    // large enough to be cut into several chunks
+    private static final int LARGE_TEXT = 5 << 20;
+
+    private static ForkJoinPool pool;
+
+    @BeforeAll
+    static void startPool() {
+        pool = new ForkJoinPool(8);
+    }
+
+    @AfterAll
+    static void stopPool() {
+        pool.shutdown();
+    }
+
+    @Test
+    void findsTheTokenizersTokens() {
+        Random random = new Random(3);
+        for (int i = 0; i < 10_000; i++) {
+            String input = TokenizerTest.randomInput(random, 30);
+            for (boolean numberSuffixes : new boolean[] {true, false}) {
+                assertEquals(Tokenizer.tokenize(input, numberSuffixes),
+                        tokens(TokenSpans.tokenize(input, numberSuffixes)), TokenizerTest.escape(input));
+            }
+        }
+    }
+
+    @Test
+    void parallelChunksMatchOneThread() {
+        Random random = new Random(4);
+        for (boolean numberSuffixes : new boolean[] {true, false}) {
+            String text = largeText(random);
+            TokenSpans serial = TokenSpans.tokenize(text, numberSuffixes);
+            assertSameSpans(serial, TokenSpans.tokenize(text, numberSuffixes, pool));
+            assertEquals(Tokenizer.tokenize(text, numberSuffixes), tokens(serial));
+        }
+    }
+
+    @Test
+    void tokenizesTextWithoutSpacesOnOneThread() {
+        StringBuilder sb = new StringBuilder(LARGE_TEXT);
+        while (sb.length() < LARGE_TEXT) {
+            sb.append("word.\n");
+        }
+        String text = sb.toString();
+        assertSameSpans(TokenSpans.tokenize(text, true), TokenSpans.tokenize(text, true, pool));
+    }
+
+    /**
+     * Makes a large text of random pieces, with runs of spaces, line breaks and a space at the very end, so chunks
+     * get cut next to every kind of token.
+     */
+    private static String largeText(Random random) {
+        StringBuilder sb = new StringBuilder(LARGE_TEXT + 64);
+        while (sb.length() < LARGE_TEXT) {
+            sb.append(TokenizerTest.randomInput(random, 12));
+        }
+        return sb.append(' ').toString();
+    }
+
+    private static void assertSameSpans(TokenSpans expected, TokenSpans actual) {
+        assertEquals(expected.size(), actual.size(), "token count");
+        for (int i = 0; i < expected.size(); i++) {
+            if (expected.start(i) != actual.start(i) || expected.end(i) != actual.end(i)
+                    || expected.type(i) != actual.type(i)) {
+                assertEquals(expected.start(i) + "-" + expected.end(i) + " type " + expected.type(i),
+                        actual.start(i) + "-" + actual.end(i) + " type " + actual.type(i), "token " + i);
+            }
+        }
+    }
+
+    private static List<String> tokens(TokenSpans spans) {
+        List<String> tokens = new ArrayList<String>(spans.size());
+        for (int i = 0; i < spans.size(); i++) {
+            tokens.add(spans.token(i));
+        }
+        return tokens;
+    }
+}
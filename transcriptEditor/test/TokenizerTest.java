@@ -0,0 +1,124 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks Tokenizer against the regular expressions it replaced, on whole strings and on strings fed in pieces.
+ */
+class TokenizerTest {
+
+    private static final int RANDOM_INPUTS = 100_000;
+
+    // the pieces random inputs are made of: letters and digits that form ordinals, the chars the old patterns looked
+    // around for, every kind of line break, and accents and letters outside ASCII for the \b rules
+    private static final String[] PIECES = {
+        "a", "b", "s", "t", "n", "d", "r", "h", "x", "A", "Z", "st", "nd", "rd", "th",
+        "0", "1", "2", "9", "12",
+        "'", "%", ":", "(", ")", "[", "]", "-", ",", "_",
+        " ", " ", " ", "\n", "\r", "\r\n", "\n\n",
+        ".", "?", "!",
+        "\u00E9", "\u0301", "\u0300", "\uD835\uDC00", "\uD834\uDD67"
+    };
+
+    @Test
+    void matchesTheOldPatternsOnExamples() {
+        String[] examples = {
+            "",
+            "Speaker 1 (00:01:02) I don't know.",
+            "It's the 21st time, up 15% from the 3rd.\r\n\r\n\r\nNext paragraph?",
+            "(12) 12) :12 12: 12%a 12%. 1st2 3rd_ 4th\u0301 caf\u00E9 5",
+            "a'b 'ab ab' a''b I'm y'all\n\n\n\n!",
+        };
+        for (String example : examples) {
+            for (boolean numberSuffixes : new boolean[] {true, false}) {
+                assertEquals(RegexTokenizer.tokenize(example, numberSuffixes),
+                        Tokenizer.tokenize(example, numberSuffixes), escape(example));
+            }
+        }
+    }
+
+    @Test
+    void matchesTheOldPatternsOnRandomInputs() {
+        Random random = new Random(1);
+        for (int i = 0; i < RANDOM_INPUTS; i++) {
+            String input = randomInput(random, 30);
+            for (boolean numberSuffixes : new boolean[] {true, false}) {
+                List<String> expected = RegexTokenizer.tokenize(input, numberSuffixes);
+                assertEquals(expected, Tokenizer.tokenize(input, numberSuffixes), escape(input));
+                assertEquals(expected, feedInPieces(input, numberSuffixes, random), "in pieces: " + escape(input));
+            }
+        }
+    }
+
+    @Test
+    void finishesEveryInputItWasFed() {
+        // one Tokenizer reused for several inputs must not carry anything from one to the next
+        Random random = new Random(2);
+        Tokenizer tokenizer = new Tokenizer(true);
+        for (int i = 0; i < 1000; i++) {
+            String input = randomInput(random, 30);
+            List<String> tokens = new ArrayList<String>();
+            tokenizer.feed(input, collect(tokens));
+            tokenizer.finish(collect(tokens));
+            assertEquals(RegexTokenizer.tokenize(input, true), tokens, escape(input));
+        }
+    }
+
+    static String randomInput(Random random, int maxPieces) {
+        StringBuilder sb = new StringBuilder();
+        int pieces = random.nextInt(maxPieces);
+        for (int i = 0; i < pieces; i++) {
+            sb.append(PIECES[random.nextInt(PIECES.length)]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Tokenizes an input handed to feed one to three chars at a time, so every token and every line break gets cut.
+     */
+    private static List<String> feedInPieces(String input, boolean numberSuffixes, Random random) {
+        List<String> tokens = new ArrayList<String>();
+        Tokenizer tokenizer = new Tokenizer(numberSuffixes);
+        Tokenizer.TokenSink sink = collect(tokens);
+        int start = 0;
+        while (start < input.length()) {
+            int end = Math.min(input.length(), start + 1 + random.nextInt(3));
+            tokenizer.feed(input.substring(start, end), sink);
+            start = end;
+        }
+        tokenizer.finish(sink);
+        return tokens;
+    }
+
+    private static Tokenizer.TokenSink collect(final List<String> tokens) {
+        return new Tokenizer.TokenSink() {
+            @Override
+            public void token(CharSequence text, int start, int end, int type) {
+                tokens.add(Tokenizer.tokenText(text, start, end, type));
+            }
+        };
+    }
+
+    static String escape(String input) {
+        StringBuilder sb = new StringBuilder();
+        for (char c : input.toCharArray()) {
+            if (c == '\n') {
+                sb.append("\\n");
+            }
+            else if (c == '\r') {
+                sb.append("\\r");
+            }
+            else if (c < ' ' || c > '~') {
+                sb.append(String.format("\\u%04x", (int) c));
+            }
+            else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}